@@ -0,0 +1,218 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.BinaryAsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.GzipHtmlAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import metrics.Metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Renders many images without user interaction, several at a time, and prints how long
+ * each of them took. At most maxInFlight images are decoded or rendered at once, which
+ * caps the memory used however many files are given. When metrics are enabled, the
+ * summary ends with a line of JSON holding the time spent in every stage.
+ */
+public class BatchRenderer {
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    // Images are decoded subsampled to this many pixels per char, but no further
+    private static final int DECODED_PIXELS_PER_CHAR = 8;
+    private static final String HTML_EXTENSION = ".html";
+    private static final String BINARY_EXTENSION = ".asc";
+    private static final String GZIP_HTML_EXTENSION = ".html.gz";
+    private static final String GLOB_CHARS = "*?[{";
+
+    /**
+     * Where rendered images go.
+     */
+    public enum Format {
+        /**
+         * An HTML file next to every image, named after it.
+         */
+        HTML,
+        /**
+         * The console, one image after the other.
+         */
+        CONSOLE,
+        /**
+         * A run-length encoded binary file next to every image, for archiving.
+         */
+        BINARY,
+        /**
+         * A gzip-compressed HTML file next to every image, for archiving.
+         */
+        GZIP_HTML
+    }
+
+    private final int charsInRow;
+    private final char[] charSet;
+    private final Format format;
+    private final String fontName;
+    private final int maxInFlight;
+    private final Object consoleLock = new Object();
+
+    private record Result(Path file, boolean succeeded, long decodeNanos, long renderNanos, long outputNanos) {
+        long totalNanos() {
+            return decodeNanos + renderNanos + outputNanos;
+        }
+    }
+
+    /**
+     * @param maxInFlight the largest number of images held in memory at once
+     */
+    public BatchRenderer(int charsInRow, char[] charSet, Format format, String fontName, int maxInFlight) {
+        this.charsInRow = charsInRow;
+        this.charSet = charSet;
+        this.format = format;
+        this.fontName = fontName;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Renders all the given files, then prints a timing summary.
+     *
+     * @param patterns paths of images, or glob patterns matching them (such as "scans/*.jpg",
+     *                 or "scans/**.png" to include subdirectories)
+     * @return the number of files which failed to render
+     */
+    public int run(List<String> patterns) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        for (String pattern : patterns) {
+            files.addAll(expand(pattern));
+        }
+
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(maxInFlight);
+        List<Future<Result>> futures = new ArrayList<>();
+        try {
+            for (Path file : files) {
+                futures.add(executor.submit(() -> render(file)));
+            }
+            List<Result> results = new ArrayList<>();
+            for (Future<Result> future : futures) {
+                results.add(future.get());
+            }
+            printSummary(results, System.nanoTime() - start);
+            return (int) results.stream().filter(result -> !result.succeeded()).count();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Renders a single file. A file which cannot be decoded, rendered or written fails on
+     * its own, without stopping the others.
+     */
+    private Result render(Path file) {
+        long start = System.nanoTime();
+        long decoded = -1, rendered = -1;
+        try {
+            Image img = Image.fromFile(file.toString(), charsInRow * DECODED_PIXELS_PER_CHAR);
+            decoded = System.nanoTime();
+            if (img == null) {
+                System.err.println("Failed to open image file " + file);
+                return new Result(file, false, decoded - start, 0, 0);
+            }
+
+            int imgCharsInRow = Math.max(1, Math.min(charsInRow, img.getWidth() / MIN_PIXELS_PER_CHAR));
+            char[][] chars = new BrightnessImgCharMatcher(img, fontName).chooseChars(imgCharsInRow, charSet);
+            rendered = System.nanoTime();
+
+            switch (format) {
+                case HTML:
+                    new HtmlAsciiOutput(file + HTML_EXTENSION, fontName).write(chars);
+                    break;
+                case BINARY:
+                    new BinaryAsciiOutput(file + BINARY_EXTENSION, true).write(chars);
+                    break;
+                case GZIP_HTML:
+                    new GzipHtmlAsciiOutput(file + GZIP_HTML_EXTENSION, fontName).write(chars);
+                    break;
+                default:
+                    synchronized (consoleLock) {
+                        System.out.println(file);
+                        new ConsoleAsciiOutput().output(chars);
+                    }
+                    break;
+            }
+            long written = System.nanoTime();
+            return new Result(file, true, decoded - start, rendered - decoded, written - rendered);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Failed to render " + file + ": " + e);
+            // The time until the failure goes to the stage which failed
+            long failed = System.nanoTime();
+            long decodeEnd = decoded < 0 ? failed : decoded;
+            long renderEnd = rendered < 0 ? failed : rendered;
+            return new Result(file, false, decodeEnd - start, renderEnd - decodeEnd, failed - renderEnd);
+        }
+    }
+
+    private static List<Path> expand(String pattern) throws IOException {
+        int firstGlobChar = firstIndexOfAny(pattern, GLOB_CHARS);
+        if (firstGlobChar < 0) {
+            return List.of(Path.of(pattern));
+        }
+        int baseEnd = pattern.lastIndexOf('/', firstGlobChar);
+        Path base = Path.of(baseEnd < 0 ? "." : pattern.substring(0, baseEnd + 1));
+        String fullPattern = baseEnd < 0 ? base.resolve(pattern).toString() : pattern;
+        int depth = fullPattern.contains("**") ? Integer.MAX_VALUE :
+                (int) pattern.substring(baseEnd + 1).chars().filter(c -> c == '/').count() + 1;
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + fullPattern);
+        try (Stream<Path> paths = Files.walk(base, depth)) {
+            return paths.filter(Files::isRegularFile).filter(matcher::matches).sorted().toList();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static int firstIndexOfAny(String s, String chars) {
+        for (int i = 0; i < s.length(); i++) {
+            if (chars.indexOf(s.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void printSummary(List<Result> results, long wallNanos) {
+        System.out.printf("%-40s %8s %10s %10s %10s %10s%n",
+                "file", "status", "decode ms", "render ms", "output ms", "total ms");
+        long totalNanos = 0;
+        int failed = 0;
+        for (Result result : results) {
+            System.out.printf("%-40s %8s %10.1f %10.1f %10.1f %10.1f%n",
+                    result.file(), result.succeeded() ? "ok" : "FAILED", millis(result.decodeNanos()),
+                    millis(result.renderNanos()), millis(result.outputNanos()), millis(result.totalNanos()));
+            totalNanos += result.totalNanos();
+            failed += result.succeeded() ? 0 : 1;
+        }
+        double wallSeconds = wallNanos / 1e9;
+        System.out.printf("%d files, %d failed, %.1f ms of work in %.1f ms wall time (%.1f images per second)%n",
+                results.size(), failed, millis(totalNanos), millis(wallNanos), results.size() / wallSeconds);
+        if (Metrics.isEnabled()) {
+            System.out.println(Metrics.toJson());
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+}
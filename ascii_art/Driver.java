@@ -1,13 +1,45 @@
 package ascii_art;
 
 import image.Image;
+import metrics.Metrics;
 
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
 import java.util.logging.Logger;
 
 
 public class Driver {
+    private static final String FRAMES_MODE = "frames";
+    private static final String BATCH_MODE = "batch";
+    private static final String SERVE_MODE = "serve";
+    private static final String SCRIPT_MODE = "script";
+    private static final String JOBS_OPTION = "--jobs";
+    private static final String METRICS_OPTION = "--metrics";
+    private static final String ALL_CHARS = "all";
+    private static final int DEFAULT_CHARS_IN_ROW = 64;
+    private static final String DEFAULT_CHARS = "0123456789";
+    private static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_IMAGE_CACHE_MB = 256;
+    private static final int SERVER_STOP_DELAY_SECONDS = 5;
+
     public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals(FRAMES_MODE)) {
+            runFrames(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(BATCH_MODE)) {
+            runBatch(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SERVE_MODE)) {
+            runServer(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals(SCRIPT_MODE)) {
+            runScript(args);
+            return;
+        }
         System.out.println(Arrays.toString(args));
         System.out.println(args.length);
         if (args.length != 2) {
@@ -19,10 +51,103 @@ public class Driver {
             Logger.getGlobal().severe("Failed to open image file " + args[0]);
             return;
         }
-        new Shell(img).run();
+        new Shell(img, true).run();
 //        Image img = Image.fromFile("/Users/giladomesi/Src/OOP/Ex 4/out/production/Ex 4/board.jpeg");
 //        BrightnessImgCharMatcher charMatcher = new BrightnessImgCharMatcher(img, "Ariel");
 //        var chars = charMatcher.chooseChars(2, new char[]{'m', 'o'});
 //        System.out.println(Arrays.deepToString(chars));
     }
+
+    private static void runFrames(String[] args) throws Exception {
+        if (args.length < 3 || args.length > 5) {
+            System.err.println("USAGE: java asciiArt frames <gif or directory> <output directory> " +
+                    "[chars in row] [chars]");
+            return;
+        }
+        int charsInRow = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_CHARS_IN_ROW;
+        char[] chars = (args.length > 4 ? args[4] : DEFAULT_CHARS).toCharArray();
+        new FramePipeline(charsInRow, chars, Shell.FONT_NAME).run(args[1], args[2]);
+    }
+
+    private static void runBatch(String[] args) throws Exception {
+        int first = 1;
+        int jobs = Runtime.getRuntime().availableProcessors();
+        int charsInRow;
+        BatchRenderer.Format format;
+        try {
+            while (first < args.length && args[first].startsWith("--")) {
+                if (args[first].equals(JOBS_OPTION) && first + 1 < args.length) {
+                    jobs = Integer.parseInt(args[first + 1]);
+                    first += 2;
+                } else if (args[first].equals(METRICS_OPTION)) {
+                    Metrics.setEnabled(true);
+                    first++;
+                } else {
+                    break;
+                }
+            }
+            if (args.length < first + 4) {
+                printBatchUsage();
+                return;
+            }
+            charsInRow = Integer.parseInt(args[first]);
+            format = BatchRenderer.Format.valueOf(args[first + 2].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // A number or format which does not parse
+            printBatchUsage();
+            return;
+        }
+        if (jobs < 1 || charsInRow < 1) {
+            printBatchUsage();
+            return;
+        }
+        char[] chars = args[first + 1].equals(ALL_CHARS) ? allChars() : args[first + 1].toCharArray();
+        List<String> patterns = Arrays.asList(args).subList(first + 3, args.length);
+
+        int failed = new BatchRenderer(charsInRow, chars, format, Shell.FONT_NAME, jobs).run(patterns);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void printBatchUsage() {
+        System.err.println("USAGE: java asciiArt batch [--jobs <images in flight>] [--metrics] " +
+                "<chars in row> <chars|all> <html|console|binary|gzip_html> <files or globs...>");
+    }
+
+    private static void runServer(String[] args) throws Exception {
+        if (args.length > 4) {
+            System.err.println("USAGE: java asciiArt serve [port] [threads] [image cache MB]");
+            return;
+        }
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+        long cacheBytes = (args.length > 3 ? Long.parseLong(args[3]) : DEFAULT_IMAGE_CACHE_MB) << 20;
+        RenderServer server = new RenderServer(port, threads, cacheBytes, Shell.FONT_NAME);
+        server.start();
+        // Lets renders in progress finish when the process is stopped
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> server.stop(SERVER_STOP_DELAY_SECONDS)));
+        System.out.println("Serving on http://localhost:" + server.getPort() + "/render and /stats");
+    }
+
+    private static void runScript(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.err.println("USAGE: java asciiArt script <image> <command file>");
+            return;
+        }
+        Image img = Image.fromFile(args[1]);
+        if (img == null) {
+            Logger.getGlobal().severe("Failed to open image file " + args[1]);
+            return;
+        }
+        new Shell(img, true).runScript(Path.of(args[2]));
+    }
+
+    static char[] allChars() {
+        char[] chars = new char[128];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) i;
+        }
+        return chars;
+    }
 }
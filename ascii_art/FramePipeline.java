@@ -0,0 +1,246 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessGrid;
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.CharPalette;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Renders a sequence of frames, from an animated GIF or a directory of images, to one HTML
+ * file per frame. Decoding, brightness measurement, character matching and output each run
+ * on their own thread, connected by bounded queues. The stages overlap, and a slow stage
+ * holds back the ones before it instead of letting decoded frames pile up in memory.
+ */
+public class FramePipeline {
+    private static final int QUEUE_CAPACITY = 4;
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final String FRAME_FILE_FORMAT = "frame_%05d.html";
+    private static final String GIF_IMAGE_METADATA = "javax_imageio_gif_image_1.0";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+
+    private final int charsInRow;
+    private final char[] charSet;
+    private final String fontName;
+
+    /**
+     * A frame on its way through the pipeline. A null value marks the end of the sequence.
+     */
+    private record Frame<T>(int index, T value) {
+    }
+
+    /**
+     * Where a GIF frame is drawn on the canvas, and what becomes of its rectangle once
+     * the frame was shown, by the names of the GIF image metadata.
+     */
+    private record FramePlacement(int left, int top, String disposalMethod) {
+    }
+
+    public FramePipeline(int charsInRow, char[] charSet, String fontName) {
+        this.charsInRow = charsInRow;
+        this.charSet = charSet;
+        this.fontName = fontName;
+    }
+
+    /**
+     * Renders every frame of input into outputDir, and reports the throughput when done.
+     *
+     * @param input     an animated image file, or a directory whose images are the frames
+     *                  in the order of their names
+     * @param outputDir the directory to write the frames to, created if needed
+     * @return the number of frames rendered
+     */
+    public int run(String input, String outputDir) throws IOException, InterruptedException {
+        File source = new File(input);
+        Path target = Files.createDirectories(Path.of(outputDir));
+        CharPalette palette = CharPalette.of(charSet, fontName);
+
+        BlockingQueue<Frame<Image>> decoded = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Frame<BrightnessGrid>> measured = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Frame<char[][]>> matched = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        long start = System.nanoTime();
+        ExecutorService stages = Executors.newFixedThreadPool(4);
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(stages);
+        completion.submit(() -> decode(source, decoded));
+        completion.submit(stage(decoded, measured, this::measure));
+        completion.submit(stage(measured, matched, grid -> palette.map(grid, false)));
+        completion.submit(() -> write(matched, target));
+
+        int frames = 0;
+        try {
+            for (int i = 0; i < 4; i++) {
+                frames = Math.max(frames, completion.take().get());
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioe) {
+                throw ioe;
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            stages.shutdownNow();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("Rendered %d frames in %.2f s (%.1f frames per second)%n",
+                frames, seconds, frames / seconds);
+        return frames;
+    }
+
+    private interface Step<T, R> {
+        R apply(T value) throws IOException;
+    }
+
+    /**
+     * A middle stage of the pipeline, applying step to every frame until the end marker.
+     */
+    private static <T, R> Callable<Integer> stage(BlockingQueue<Frame<T>> in, BlockingQueue<Frame<R>> out,
+                                                  Step<T, R> step) {
+        return () -> {
+            int frames = 0;
+            for (Frame<T> frame = in.take(); frame.value() != null; frame = in.take()) {
+                out.put(new Frame<>(frame.index(), step.apply(frame.value())));
+                frames++;
+            }
+            out.put(new Frame<>(frames, null));
+            return frames;
+        };
+    }
+
+    private BrightnessGrid measure(Image img) {
+        int frameCharsInRow = Math.max(1, Math.min(charsInRow, img.getWidth() / MIN_PIXELS_PER_CHAR));
+        return new BrightnessImgCharMatcher(img, fontName).getBrightnessGrid(frameCharsInRow);
+    }
+
+    private int write(BlockingQueue<Frame<char[][]>> in, Path target) throws InterruptedException {
+        int frames = 0;
+        for (Frame<char[][]> frame = in.take(); frame.value() != null; frame = in.take()) {
+            String filename = target.resolve(String.format(FRAME_FILE_FORMAT, frame.index())).toString();
+            new HtmlAsciiOutput(filename, fontName).output(frame.value());
+            frames++;
+        }
+        return frames;
+    }
+
+    private int decode(File source, BlockingQueue<Frame<Image>> out) throws IOException, InterruptedException {
+        int frames = source.isDirectory() ? decodeDirectory(source, out) : decodeAnimation(source, out);
+        out.put(new Frame<>(frames, null));
+        return frames;
+    }
+
+    private int decodeDirectory(File source, BlockingQueue<Frame<Image>> out) throws InterruptedException {
+        File[] files = source.listFiles(File::isFile);
+        if (files == null) {
+            return 0;
+        }
+        Arrays.sort(files, Comparator.comparing(File::getName));
+        int frames = 0;
+        for (File file : files) {
+            Image img = Image.fromFile(file.getPath());
+            if (img == null) {
+                Logger.getGlobal().warning("Skipping unreadable frame " + file);
+                continue;
+            }
+            out.put(new Frame<>(frames++, img));
+        }
+        return frames;
+    }
+
+    /**
+     * Decodes the frames of an animation one at a time. GIF frames may cover only part of
+     * the picture, so each is drawn at its offset over the frames before it, and once it
+     * was shown its rectangle is cleared or restored as its disposal method says.
+     */
+    private int decodeAnimation(File source, BlockingQueue<Frame<Image>> out)
+            throws IOException, InterruptedException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(source)) {
+            Iterator<ImageReader> readers = stream == null ? null : ImageIO.getImageReaders(stream);
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + source);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, false, false);
+                int numFrames = reader.getNumImages(true);
+                BufferedImage canvas = null;
+                for (int i = 0; i < numFrames; i++) {
+                    BufferedImage frame = reader.read(i);
+                    if (canvas == null) {
+                        canvas = new BufferedImage(reader.getWidth(0), reader.getHeight(0),
+                                BufferedImage.TYPE_INT_ARGB);
+                    }
+                    FramePlacement placement = getFramePlacement(reader.getImageMetadata(i));
+                    int width = Math.min(frame.getWidth(), canvas.getWidth() - placement.left());
+                    int height = Math.min(frame.getHeight(), canvas.getHeight() - placement.top());
+                    int[] previous = null;
+                    if (placement.disposalMethod().equals(RESTORE_TO_PREVIOUS) && width > 0 && height > 0) {
+                        previous = canvas.getRGB(placement.left(), placement.top(), width, height, null, 0, width);
+                    }
+
+                    Graphics2D graphics = canvas.createGraphics();
+                    graphics.drawImage(frame, placement.left(), placement.top(), null);
+                    graphics.dispose();
+                    out.put(new Frame<>(i, Image.fromBufferedImage(canvas)));
+
+                    if (previous != null) {
+                        canvas.setRGB(placement.left(), placement.top(), width, height, previous, 0, width);
+                    } else if (placement.disposalMethod().equals(RESTORE_TO_BACKGROUND)) {
+                        // Cleared to transparent, as the canvas starts, rather than the GIF's background color
+                        graphics = canvas.createGraphics();
+                        graphics.setComposite(AlphaComposite.Clear);
+                        graphics.fillRect(placement.left(), placement.top(), frame.getWidth(), frame.getHeight());
+                        graphics.dispose();
+                    }
+                }
+                return numFrames;
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static FramePlacement getFramePlacement(IIOMetadata metadata) {
+        int left = 0, top = 0;
+        String disposalMethod = "none";
+        if (metadata == null || !Arrays.asList(metadata.getMetadataFormatNames()).contains(GIF_IMAGE_METADATA)) {
+            return new FramePlacement(left, top, disposalMethod);
+        }
+        for (Node node = metadata.getAsTree(GIF_IMAGE_METADATA).getFirstChild(); node != null;
+             node = node.getNextSibling()) {
+            NamedNodeMap attributes = node.getAttributes();
+            if (node.getNodeName().equals("ImageDescriptor")) {
+                left = Integer.parseInt(attributes.getNamedItem("imageLeftPosition").getNodeValue());
+                top = Integer.parseInt(attributes.getNamedItem("imageTopPosition").getNodeValue());
+            } else if (node.getNodeName().equals("GraphicControlExtension")) {
+                disposalMethod = attributes.getNamedItem("disposalMethod").getNodeValue();
+            }
+        }
+        return new FramePlacement(left, top, disposalMethod);
+    }
+}
@@ -0,0 +1,109 @@
+package ascii_art;
+
+import image.Image;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Decoded images kept by path, least recently used first out, within a budget of bytes.
+ * An image is decoded again once its file changes size or modification time. Threads
+ * asking for an image being decoded wait for that decode instead of starting their own.
+ */
+public class ImageCache {
+    // The pixels, and the integral image built by the first render
+    private static final long BYTES_PER_PIXEL = 2L * Integer.BYTES;
+
+    private record Key(Path path, long size, long lastModified) {
+    }
+
+    private final long budgetBytes;
+    private final LinkedHashMap<Key, Image> images = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<Image>> decoding = new HashMap<>();
+    private long usedBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param budgetBytes the memory the kept images may take together
+     */
+    public ImageCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * Returns the image in the given file, decoding it unless it is kept.
+     *
+     * @return the image, or null if the file is not an image
+     * @throws IOException if the file cannot be read
+     */
+    public Image get(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        Key key = new Key(path.toAbsolutePath().normalize(), attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+
+        CompletableFuture<Image> decode;
+        boolean isDecoding = false;
+        synchronized (this) {
+            Image img = images.get(key);
+            if (img != null) {
+                hits++;
+                return img;
+            }
+            misses++;
+            decode = decoding.get(key);
+            if (decode == null) {
+                decode = new CompletableFuture<>();
+                decoding.put(key, decode);
+                isDecoding = true;
+            }
+        }
+        if (!isDecoding) {
+            return decode.join();
+        }
+
+        Image img = null;
+        try {
+            img = Image.fromFile(path.toString());
+        } finally {
+            synchronized (this) {
+                decoding.remove(key);
+                if (img != null) {
+                    keep(key, img);
+                }
+            }
+            decode.complete(img);
+        }
+        return img;
+    }
+
+    /**
+     * Returns the number of images kept, the bytes they take, and how often they were used.
+     */
+    public synchronized String summary() {
+        return String.format("%d images kept, %.1f of %.1f MB, %d hits, %d misses",
+                images.size(), usedBytes / 1e6, budgetBytes / 1e6, hits, misses);
+    }
+
+    private void keep(Key key, Image img) {
+        long bytes = (long) img.getWidth() * img.getHeight() * BYTES_PER_PIXEL;
+        if (bytes > budgetBytes) {
+            return;
+        }
+        Iterator<Map.Entry<Key, Image>> eldest = images.entrySet().iterator();
+        while (usedBytes + bytes > budgetBytes) {
+            Image evicted = eldest.next().getValue();
+            usedBytes -= (long) evicted.getWidth() * evicted.getHeight() * BYTES_PER_PIXEL;
+            eldest.remove();
+        }
+        images.put(key, img);
+        usedBytes += bytes;
+    }
+}
@@ -0,0 +1,234 @@
+package ascii_art;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.AsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import image.Image;
+import metrics.Metrics;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+/**
+ * Renders images over HTTP on the loopback interface, so that many renders share a single
+ * process: the font and its glyphs are set up once, and decoded images are kept in an
+ * ImageCache between requests. Requests are handled concurrently on a fixed pool of threads.
+ * <p>
+ * GET /render?path=&lt;file&gt; renders an image on the server's disk, and POST /render
+ * renders the image in the request body. Both take the parameters charsInRow, chars
+ * (the characters, or "all" for ASCII), format (html or text) and stretch (true or false).
+ * Uploaded images may take at most 64 MB. GET /stats reports the 50th and 99th percentile
+ * latency of recent renders.
+ */
+public class RenderServer {
+    private static final int MIN_PIXELS_PER_CHAR = 2;
+    private static final int DEFAULT_CHARS_IN_ROW = 64;
+    private static final String DEFAULT_CHARS = "0123456789";
+    private static final String ALL_CHARS = "all";
+    private static final int MAX_LATENCIES = 4096;
+    private static final int MAX_UPLOAD_BYTES = 64 << 20;
+    private static final String TEXT_TYPE = "text/plain; charset=UTF-8";
+    private static final String HTML_TYPE = "text/html; charset=UTF-8";
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final ImageCache imageCache;
+    private final String fontName;
+    // The latencies of the most recent renders, in nanoseconds, as a ring
+    private final long[] latencies = new long[MAX_LATENCIES];
+    private long numRenders = 0;
+
+    /**
+     * @param port            the port to listen on, or 0 for any free port
+     * @param threads         the largest number of requests handled at once
+     * @param imageCacheBytes the memory decoded images may take together
+     */
+    public RenderServer(int port, int threads, long imageCacheBytes, String fontName) throws IOException {
+        this.fontName = fontName;
+        imageCache = new ImageCache(imageCacheBytes);
+        executor = Executors.newFixedThreadPool(threads);
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/render", this::handleRender);
+        server.createContext("/stats", this::handleStats);
+    }
+
+    /**
+     * Starts serving in the background, rendering the ASCII glyphs of the font right away.
+     */
+    public void start() {
+        BrightnessImgCharMatcher.warmUp(fontName);
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, and waits up to the given time for those in progress.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleRender(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        try {
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            Image img = readImage(exchange, params);
+            if (img == null) {
+                return;
+            }
+
+            int charsInRow = Integer.parseInt(params.getOrDefault("charsInRow", "" + DEFAULT_CHARS_IN_ROW));
+            if (charsInRow < 1) {
+                throw new IllegalArgumentException("charsInRow must be positive");
+            }
+            charsInRow = Math.max(1, Math.min(charsInRow, img.getWidth() / MIN_PIXELS_PER_CHAR));
+            String charsParam = params.getOrDefault("chars", DEFAULT_CHARS);
+            char[] chars = charsParam.equals(ALL_CHARS) ? Driver.allChars() : charsParam.toCharArray();
+            boolean stretch = Boolean.parseBoolean(params.getOrDefault("stretch", "false"));
+            boolean isText = params.getOrDefault("format", "html").equals("text");
+
+            char[][] rendered = new BrightnessImgCharMatcher(img, fontName).chooseChars(charsInRow, chars, stretch);
+            exchange.getResponseHeaders().set("Content-Type", isText ? TEXT_TYPE : HTML_TYPE);
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream body = exchange.getResponseBody();
+            AsciiOutput output = isText ? new ConsoleAsciiOutput(body) : new HtmlAsciiOutput(body, fontName);
+            output.output(rendered);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, e.getMessage());
+        } catch (RuntimeException e) {
+            Logger.getGlobal().severe("Failed to render: " + e);
+            sendError(exchange, 500, "Failed to render");
+        } finally {
+            exchange.close();
+            recordLatency(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Returns the image a render request asks for, or null after responding with an error.
+     */
+    private Image readImage(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String path = params.get("path");
+        String method = exchange.getRequestMethod();
+        if (path != null && (method.equals("GET") || method.equals("POST"))) {
+            try {
+                Image img = imageCache.get(Path.of(path));
+                if (img == null) {
+                    sendError(exchange, 415, "Not an image: " + path);
+                }
+                return img;
+            } catch (NoSuchFileException e) {
+                sendError(exchange, 404, "No such file: " + path);
+                return null;
+            }
+        }
+        if (!method.equals("POST")) {
+            sendError(exchange, 405, "Use GET with a path, or POST an image");
+            return null;
+        }
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (contentLength != null && Long.parseLong(contentLength) > MAX_UPLOAD_BYTES) {
+            sendError(exchange, 413, "Images may take at most " + MAX_UPLOAD_BYTES + " bytes");
+            return null;
+        }
+        // Bodies sent without a length are read up to one byte past the limit
+        byte[] body = exchange.getRequestBody().readNBytes(MAX_UPLOAD_BYTES + 1);
+        if (body.length > MAX_UPLOAD_BYTES) {
+            sendError(exchange, 413, "Images may take at most " + MAX_UPLOAD_BYTES + " bytes");
+            return null;
+        }
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(body));
+        if (decoded == null) {
+            sendError(exchange, 415, "The request body is not an image");
+            return null;
+        }
+        return Image.fromBufferedImage(decoded);
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            long[] recent;
+            long renders;
+            synchronized (latencies) {
+                renders = numRenders;
+                recent = Arrays.copyOf(latencies, (int) Math.min(renders, MAX_LATENCIES));
+            }
+            Arrays.sort(recent);
+            StringBuilder stats = new StringBuilder(String.format("renders %d%n", renders));
+            if (recent.length > 0) {
+                stats.append(String.format("latency p50 %.1f ms, p99 %.1f ms, over the last %d renders%n",
+                        percentile(recent, 50) / 1e6, percentile(recent, 99) / 1e6, recent.length));
+            }
+            stats.append(imageCache.summary()).append(System.lineSeparator());
+            if (Metrics.isEnabled()) {
+                stats.append(Metrics.summary());
+            }
+            send(exchange, 200, stats.toString());
+        }
+    }
+
+    private void recordLatency(long nanos) {
+        synchronized (latencies) {
+            latencies[(int) (numRenders % MAX_LATENCIES)] = nanos;
+            numRenders++;
+        }
+    }
+
+    /**
+     * Returns the nearest-rank percentile of sorted values.
+     */
+    private static long percentile(long[] sorted, int percent) {
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String param : rawQuery.split("&")) {
+            int equals = param.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(param.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() == -1) {
+            send(exchange, status, message + System.lineSeparator());
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", TEXT_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+}
@@ -1,119 +1,556 @@
 package ascii_art;
 
+import ascii_art.img_to_char.BrightnessGrid;
 import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_art.img_to_char.BrightnessPyramid;
+import ascii_art.img_to_char.CharPalette;
+import ascii_art.img_to_char.ProgressiveRenderer;
+import ascii_output.AnsiConsoleAsciiOutput;
+import ascii_output.AsciiOutput;
+import ascii_output.ColoredHtmlAsciiOutput;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
 import image.Image;
+import metrics.Metrics;
 
-import java.io.FileWriter;
+import java.io.BufferedReader;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
 
 
 public class Shell {
     private static final String NEW_COMMAND = "<<< ";
     private static final int MIN_PIXELS_PER_CHAR = 2;
     private static final int INITIAL_CHARS_IN_ROW = 64;
-    private static final String FONT_NAME = "Courier New";
+    static final String FONT_NAME = "Courier New";
+    private static final String OUTPUT_FILENAME = "out.html";
+    private static final int MAX_CACHED_GRIDS = 8;
+    private static final long PYRAMID_BUDGET_BYTES = 64L << 20;
+    private static final int MAX_CACHED_RENDERS = 16;
+    private static final String SCRIPT_COMMENT = "#";
 
+    // Everything but the renders is printed through the line counter, so the ANSI output
+    // can find its grid above whatever was printed since it was drawn
+    private final LineCounter lineCounter = new LineCounter(System.out);
+    private final PrintStream console = new PrintStream(lineCounter, true);
     private final HashSet<Character> charSet = new HashSet<>();
     private final int minCharsInRow;
     private final int maxCharsInRow;
     private int charsInRow;
     private final Image img;
     private boolean isConsole;
+    // Set while console output redraws only what changed, through the same output every time
+    private AnsiConsoleAsciiOutput ansiOutput;
+    private boolean isStretched;
+    private boolean isColored;
+    private boolean isShaped;
+    private final BrightnessImgCharMatcher charMatcher;
+    // Every resolution reachable from the initial one by res up/down
+    private final BrightnessPyramid pyramid;
+    // Renders one at a time in the background, so commands are read while a render runs.
+    // The caches below are only used by renders, on this thread.
+    private final ExecutorService renderExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "render");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // The most recently requested render, which a newer one cancels
+    private RenderRequest pendingRequest;
+    private Future<?> pendingRender;
+    // Recently measured resolutions outside the pyramid, and recently rendered states
+    private final Map<Integer, BrightnessGrid> gridCache = lruCache(MAX_CACHED_GRIDS);
+    private final Map<RenderKey, char[][]> renderCache = lruCache(MAX_CACHED_RENDERS);
+    // Recently measured resolutions along with their colors
+    private final Map<Integer, BrightnessGrid> coloredGridCache = lruCache(MAX_CACHED_GRIDS);
+    // The last grid drawn by an ANSI output, and the render that drew it, used by renders only
+    private AnsiFrame lastAnsiFrame;
+    private RenderRequest lastAnsiRequest;
+
+    private record RenderKey(int charsInRow, String chars, String fontName, boolean isStretched, boolean isShaped) {
+    }
+
+    private record AnsiFrame(AnsiConsoleAsciiOutput output, String chars, int rows, int cols) {
+    }
+
+    /**
+     * Passes bytes on while counting the lines among them.
+     */
+    private static class LineCounter extends FilterOutputStream {
+        private int lines;
+
+        LineCounter(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            if (b == '\n') {
+                lines++;
+            }
+            out.write(b);
+        }
+
+        @Override
+        public synchronized void write(byte[] b, int off, int len) throws IOException {
+            for (int i = off; i < off + len; i++) {
+                if (b[i] == '\n') {
+                    lines++;
+                }
+            }
+            out.write(b, off, len);
+        }
+
+        /**
+         * Counts a line the terminal printed on its own, echoing what was typed.
+         */
+        synchronized void countLine() {
+            lines++;
+        }
+
+        /**
+         * Returns the lines counted since the last call.
+         */
+        synchronized int takeLines() {
+            int taken = lines;
+            lines = 0;
+            return taken;
+        }
+    }
+
+    /**
+     * The state a render was requested in, taken when requested, since the commands after it
+     * may change the state while it runs, and whether it was cancelled since. Renders check
+     * for cancellation between rows of tiles and before output, rather than being
+     * interrupted, so a file being written is never cut short.
+     */
+    private record RenderRequest(int charsInRow, char[] chars, boolean isStretched, boolean isShaped,
+                                 boolean isColored, boolean isConsole, AnsiConsoleAsciiOutput ansiOutput,
+                                 AtomicBoolean cancelled) {
+        RenderKey getKey() {
+            return new RenderKey(charsInRow, new String(chars), FONT_NAME, isStretched, isShaped);
+        }
+
+        boolean isCancelled() {
+            return cancelled.get();
+        }
+
+        /**
+         * Stops the render here if it was cancelled.
+         */
+        void checkCancelled() {
+            if (cancelled.get()) {
+                throw new CancellationException("The render was cancelled");
+            }
+        }
+    }
 
     public Shell(Image img) {
+        this(img, false);
+    }
+
+    /**
+     * @param img           the image to render
+     * @param warmUpGlyphs  whether to render the ASCII characters of the font in the background
+     *                      right away, so the first render does not wait for them
+     */
+    public Shell(Image img, boolean warmUpGlyphs) {
+        if (warmUpGlyphs) {
+            BrightnessImgCharMatcher.warmUp(FONT_NAME);
+        }
         for (int i = 0; i < 10; i++) {
             charSet.add((char) ('0' + i));
         }
         this.img = img;
+        charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
 
         minCharsInRow = Math.max(1, img.getWidth() / img.getHeight());
         maxCharsInRow = img.getWidth() / MIN_PIXELS_PER_CHAR;
         charsInRow = Math.max(Math.min(INITIAL_CHARS_IN_ROW, maxCharsInRow), minCharsInRow);
+        int finestCharsInRow = charsInRow;
+        while (finestCharsInRow * 2 <= maxCharsInRow) {
+            finestCharsInRow *= 2;
+        }
+        pyramid = new BrightnessPyramid(img, finestCharsInRow, Integer.SIZE, PYRAMID_BUDGET_BYTES);
         isConsole = false;
+        isStretched = false;
+        isColored = false;
+        isShaped = false;
     }
 
+    /**
+     * Reads commands from the console until exit, then waits for the last render to finish.
+     */
     public void run() {
         boolean isActive = true;
         Scanner myObj = new Scanner(System.in);  // Create a Scanner object
+        // Only a terminal echoes what is typed, ending the prompt's line
+        boolean isEchoed = System.console() != null;
 
         while (isActive) {
-            System.out.print(NEW_COMMAND);
-            String input = myObj.nextLine();
-
-            String[] inputs = input.split(" ");
-            switch (inputs[0]) {
-                case "exit":
-                    isActive = false;
-                    break;
-                case "add":
-                    if ((inputs.length != 2) || (!addRemoveFunction(inputs[1], false))) {
-                        System.out.println("Did not add due to incorrect format");
-                    }
-                    break;
-                case "remove":
-                    if ((inputs.length != 2) || (!addRemoveFunction(inputs[1], true))) {
-                        System.out.println("Did not remove due to incorrect format");
-                    }
-                    break;
-                case "res":
-                    if (inputs.length == 2) {
-                        updateRes(inputs[1]);
-                    } else {
-                        System.out.println("Did not change due to incorrect format");
-                    }
-                    break;
-                case "render":
-                    BrightnessImgCharMatcher charMatcher = new BrightnessImgCharMatcher(img, FONT_NAME);
-                    char[][] rendered = charMatcher.chooseChars(charsInRow, getCharSet());
-                    if (isConsole) {
-                        printToConsole(rendered);
-                    } else {
-                        saveToHtml(rendered);
-                    }
-                    break;
-                case "chars":
-                    System.out.println(charSet);
-                    break;
-                case "console":
+            console.print(NEW_COMMAND);
+            isActive = myObj.hasNextLine();
+            if (isActive) {
+                String line = myObj.nextLine();
+                if (isEchoed) {
+                    lineCounter.countLine();
+                }
+                isActive = execute(line);
+            }
+        }
+        awaitRender();
+    }
+
+    /**
+     * Runs the commands of a script, one per line, as if they were typed, then waits for the
+     * last render to finish. Blank lines and lines starting with # are skipped. As when
+     * typed, a render replaces any render still in progress, so a script should change
+     * the output or finish with exit before rendering again to keep every render.
+     */
+    public void runScript(Path script) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(script)) {
+            boolean isActive = true;
+            String line;
+            while (isActive && (line = reader.readLine()) != null) {
+                line = line.strip();
+                if (!line.isEmpty() && !line.startsWith(SCRIPT_COMMENT)) {
+                    console.println(NEW_COMMAND + line);
+                    isActive = execute(line);
+                }
+            }
+        }
+        awaitRender();
+    }
+
+    /**
+     * Runs a single command.
+     *
+     * @return false if the command was exit
+     */
+    private boolean execute(String input) {
+        String[] inputs = input.split(" ");
+        switch (inputs[0]) {
+            case "exit":
+                return false;
+            case "add":
+                if ((inputs.length != 2) || (!addRemoveFunction(inputs[1], false))) {
+                    console.println("Did not add due to incorrect format");
+                }
+                break;
+            case "remove":
+                if ((inputs.length != 2) || (!addRemoveFunction(inputs[1], true))) {
+                    console.println("Did not remove due to incorrect format");
+                }
+                break;
+            case "res":
+                if (inputs.length == 2) {
+                    updateRes(inputs[1]);
+                } else {
+                    console.println("Did not change due to incorrect format");
+                }
+                break;
+            case "render":
+                boolean isProgressive = inputs.length == 2 && inputs[1].equals("progressive");
+                if (isProgressive && (isShaped || (isColored && !isConsole))) {
+                    console.println("Did not render, progressive renders are by brightness and without colors");
+                } else {
+                    submitRender(isProgressive);
+                }
+                break;
+            case "cancel":
+                if (pendingRender != null && !pendingRender.isDone()) {
+                    cancelRender();
+                    console.println("Render cancelled");
+                } else {
+                    console.println("No render to cancel");
+                }
+                break;
+            case "chars":
+                console.println(charSet);
+                break;
+            case "stats":
+                stats(inputs);
+                break;
+            case "console":
+                if (inputs.length == 1) {
+                    isConsole = true;
+                    ansiOutput = null;
+                } else if (inputs.length == 2 && inputs[1].equals("ansi")) {
                     isConsole = true;
-                    break;
-                case "help":
-                    System.out.println("""
-                            exit - exit the program
-                            console - print the current set of characters
-                            add <chars> - add the given characters to the set
-                            remove <chars> - remove the given characters from the set
-                            res <up/down> - increase/decrease the resolution
-                            render <filename> - render the image to the given file
-                            chars - print the current set of characters
-                            help - print this help message""");
-                default:
-                    System.out.println("Invalid input");
-                    break;
+                    ansiOutput = new AnsiConsoleAsciiOutput(System.out, false);
+                } else {
+                    console.println("Did not change due to incorrect format");
+                }
+                break;
+            case "stretch":
+                if ((inputs.length == 2) && (inputs[1].equals("on") || inputs[1].equals("off"))) {
+                    isStretched = inputs[1].equals("on");
+                } else {
+                    console.println("Did not change due to incorrect format");
+                }
+                break;
+            case "color":
+                if ((inputs.length == 2) && (inputs[1].equals("on") || inputs[1].equals("off"))) {
+                    isColored = inputs[1].equals("on");
+                } else {
+                    console.println("Did not change due to incorrect format");
+                }
+                break;
+            case "matcher":
+                if ((inputs.length == 2) && (inputs[1].equals("shape") || inputs[1].equals("brightness"))) {
+                    isShaped = inputs[1].equals("shape");
+                } else {
+                    console.println("Did not change due to incorrect format");
+                }
+                break;
+            case "help":
+                console.println("""
+                        exit - exit the program, once the last render is done
+                        console - print the current set of characters
+                        console ansi - render to the console, redrawing only what changed since the last render
+                        add <chars> - add the given characters to the set
+                        remove <chars> - remove the given characters from the set
+                        res <up/down> - increase/decrease the resolution
+                        stretch <on/off> - spread the characters over the image's brightness range
+                        color <on/off> - draw the characters in the colors of the image, in HTML
+                        matcher <brightness/shape> - choose characters by brightness, or by their shape
+                        render <filename> - render the image to the given file, replacing a render in progress
+                        render progressive - render coarse first, then refine up to the resolution, by brightness and without colors
+                        cancel - stop the render in progress
+                        chars - print the current set of characters
+                        stats [on/off/reset] - print the time spent in every stage, or change recording
+                        help - print this help message""");
+            default:
+                console.println("Invalid input");
+                break;
+        }
+        return true;
+    }
+
+    /**
+     * Renders the current state in the background, cancelling the render before it, so a
+     * render is never held up by renders nobody waits for anymore.
+     */
+    private void submitRender(boolean isProgressive) {
+        char[] chars = getCharSet();
+        Arrays.sort(chars);
+        RenderRequest request = new RenderRequest(charsInRow, chars, isStretched, isShaped, isColored,
+                isConsole, ansiOutput, new AtomicBoolean());
+        if (pendingRender != null) {
+            cancelRender();
+        }
+        pendingRequest = request;
+        pendingRender = renderExecutor.submit(() -> {
+            try {
+                if (isProgressive) {
+                    renderProgressive(request);
+                } else if (request.isColored() && !request.isConsole()) {
+                    renderColored(request);
+                } else {
+                    output(request, render(request));
+                }
+            } catch (CancellationException e) {
+                // A newer render or the cancel command took over
+            } catch (RuntimeException e) {
+                Logger.getGlobal().severe("Failed to render: " + e);
+            }
+        });
+    }
+
+    /**
+     * Waits for the most recent render, if any, to finish.
+     */
+    private void awaitRender() {
+        if (pendingRender == null) {
+            return;
+        }
+        try {
+            pendingRender.get();
+        } catch (CancellationException | ExecutionException e) {
+            // Already reported by the render itself
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Cancels the most recent render, dropping it if it has not started yet.
+     */
+    private void cancelRender() {
+        pendingRequest.cancelled().set(true);
+        pendingRender.cancel(false);
+    }
+
+    /**
+     * Renders the image in the given state, reusing what earlier renders computed:
+     * a state rendered before is not rendered again, and a resolution from the pyramid or
+     * measured before is only mapped to the current characters.
+     */
+    private char[][] render(RenderRequest request) {
+        RenderKey key = request.getKey();
+        char[][] rendered = renderCache.get(key);
+        if (rendered == null && request.isShaped()) {
+            rendered = charMatcher.chooseCharsByShape(request.charsInRow(), request.chars(), request::isCancelled);
+            renderCache.put(key, rendered);
+        } else if (rendered == null) {
+            BrightnessGrid grid = pyramid.getGrid(request.charsInRow());
+            if (grid == null) {
+                grid = gridCache.computeIfAbsent(request.charsInRow(),
+                        cols -> charMatcher.getBrightnessGrid(cols, request::isCancelled));
+            }
+            request.checkCancelled();
+            rendered = CharPalette.of(request.chars(), FONT_NAME).map(grid, request.isStretched());
+            renderCache.put(key, rendered);
+        }
+        return rendered;
+    }
+
+    private void output(RenderRequest request, char[][] rendered) {
+        request.checkCancelled();
+        getOutput(request).output(rendered);
+    }
+
+    /**
+     * Returns the output of a render without colors. Console renders start on a line of
+     * their own, since the prompt was printed while they ran, unless drawn in place by the
+     * ANSI output.
+     */
+    private AsciiOutput getOutput(RenderRequest request) {
+        if (!request.isConsole()) {
+            return new HtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME);
+        }
+        if (request.ansiOutput() == null) {
+            console.println();
+            return new ConsoleAsciiOutput(System.out, false);
+        }
+        return rendered -> outputAnsi(request, rendered);
+    }
+
+    /**
+     * Draws a grid with the ANSI output. A grid of the chars and size the output last drew
+     * is drawn in place as the changes to that grid, above the lines printed since. A grid
+     * of other chars or another size is drawn whole on a line of its own, unless it comes
+     * from the render which drew the last grid, as the grids of a progressive render do,
+     * which replaces its last grid in place.
+     */
+    private void outputAnsi(RenderRequest request, char[][] rendered) {
+        AnsiConsoleAsciiOutput output = request.ansiOutput();
+        AnsiFrame frame = new AnsiFrame(output, new String(request.chars()), rendered.length, rendered[0].length);
+        // Nothing is printed between counting the lines and drawing above them. The console
+        // is only ever locked before the line counter, so it is not locked here.
+        synchronized (lineCounter) {
+            int lines = lineCounter.takeLines();
+            if (request != lastAnsiRequest && !frame.equals(lastAnsiFrame)) {
+                output.reset();
+                System.out.println();
+            } else {
+                output.addLinesBelow(lines);
             }
+            output.output(rendered);
+        }
+        lastAnsiFrame = frame;
+        lastAnsiRequest = request;
+    }
+
+    /**
+     * Renders the image to HTML in its colors. The levels the chars are mapped from and the
+     * colors they are drawn in are measured together, in a single colored grid, so they
+     * always line up.
+     */
+    private void renderColored(RenderRequest request) {
+        BrightnessGrid grid = coloredGridCache.computeIfAbsent(request.charsInRow(),
+                cols -> charMatcher.getColoredGrid(cols, request::isCancelled));
+        request.checkCancelled();
+        char[][] rendered;
+        if (request.isShaped()) {
+            rendered = render(request);
+        } else {
+            rendered = CharPalette.of(request.chars(), FONT_NAME).map(grid, request.isStretched());
+            renderCache.put(request.getKey(), rendered);
         }
+        request.checkCancelled();
+        new ColoredHtmlAsciiOutput(OUTPUT_FILENAME, FONT_NAME, grid.getColors()).output(rendered);
     }
 
+    /**
+     * Renders the image by brightness coarse to fine, outputting every grid as soon as it
+     * is ready, and keeps the final grid for later renders of the same state.
+     */
+    private void renderProgressive(RenderRequest request) {
+        AsciiOutput output = getOutput(request);
+        char[][] rendered = new ProgressiveRenderer(img, FONT_NAME).render(
+                request.charsInRow(), request.chars(), request.isStretched(), grid -> {
+                    request.checkCancelled();
+                    output.output(grid);
+                });
+        renderCache.put(request.getKey(), rendered);
+    }
+
+    private void stats(String[] inputs) {
+        if (inputs.length == 1) {
+            if (!Metrics.isEnabled()) {
+                console.println("Stats are not being recorded, use \"stats on\" to record them");
+            }
+            console.print(Metrics.summary());
+            return;
+        }
+        switch (inputs[1]) {
+            case "on":
+                Metrics.setEnabled(true);
+                break;
+            case "off":
+                Metrics.setEnabled(false);
+                break;
+            case "reset":
+                Metrics.reset();
+                break;
+            default:
+                console.println("Did not change due to incorrect format");
+                break;
+        }
+    }
+
+    private static <K, V> Map<K, V> lruCache(int maxEntries) {
+        return new LinkedHashMap<>(maxEntries, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
 
     private void updateRes(String change) {
         if (change.equals("up")) {
             if (charsInRow * 2 > maxCharsInRow) {
-                System.out.println("Did not change due to exceeding boundaries");
+                console.println("Did not change due to exceeding boundaries");
                 return;
             }
             charsInRow = Math.min(charsInRow * 2, maxCharsInRow);
-            System.out.println("Width set to " + charsInRow);
+            console.println("Width set to " + charsInRow);
         } else if (change.equals("down")) {
             if (charsInRow / 2 < minCharsInRow) {
-                System.out.println("Did not change due to exceeding boundaries");
+                console.println("Did not change due to exceeding boundaries");
                 return;
             }
             charsInRow = Math.max(charsInRow / 2, minCharsInRow);
-            System.out.println("Width set to " + charsInRow);
+            console.println("Width set to " + charsInRow);
         } else {
-            System.out.println("Invalid input");
+            console.println("Invalid input");
         }
 
     }
@@ -172,43 +609,4 @@ public class Shell {
         }
         return charSetArr;
     }
-
-    private void printToConsole(char[][] rendered) {
-        for (char[] chars : rendered) {
-            for (int j = 0; j < rendered[0].length; j++) {
-                System.out.print(chars[j]);
-            }
-            System.out.println();
-        }
-    }
-
-    private void saveToHtml(char[][] rendered) {
-        String htmlStart = """
-                <html>
-                <head>
-                <style>
-                body {background-color: black;}
-                </style>
-                </head>
-                <body>
-                """;
-        String htmlEnd = "</body>\n" +
-                "</html>";
-        StringBuilder htmlBody = new StringBuilder();
-        for (char[] chars : rendered) {
-            for (int j = 0; j < rendered[0].length; j++) {
-                htmlBody.append(chars[j]);
-            }
-            htmlBody.append("<br>\n");
-        }
-        String html = htmlStart + htmlBody + htmlEnd;
-        try {
-            FileWriter myWriter = new FileWriter("out.html");
-            myWriter.write(html);
-            myWriter.close();
-        } catch (IOException e) {
-            System.out.println("An error occurred.");
-            e.printStackTrace();
-        }
-    }
 }
@@ -0,0 +1,109 @@
+package ascii_art.img_to_char;
+
+/**
+ * The average brightness of every tile of an image divided into a grid, quantized to
+ * levels between 0 (black) and 255 (white). Also holds the darkest and brightest level
+ * in the grid, for stretching the brightness range, and optionally the average color of
+ * every tile.
+ */
+public class BrightnessGrid {
+    public static final int MAX_LEVEL = 255;
+
+    private final int rows;
+    private final int cols;
+    private final int[] levels;
+    private final int minLevel;
+    private final int maxLevel;
+    private final int[] colors;
+
+    /**
+     * @param levels the level of every tile, row after row. The array is not copied.
+     */
+    public BrightnessGrid(int rows, int cols, int[] levels, int minLevel, int maxLevel) {
+        this(rows, cols, levels, minLevel, maxLevel, null);
+    }
+
+    /**
+     * @param levels the level of every tile, row after row. The array is not copied.
+     * @param colors the average color of every tile as an RGB int, row after row, or null.
+     *               The array is not copied.
+     */
+    public BrightnessGrid(int rows, int cols, int[] levels, int minLevel, int maxLevel, int[] colors) {
+        this.rows = rows;
+        this.cols = cols;
+        this.levels = levels;
+        this.minLevel = minLevel;
+        this.maxLevel = maxLevel;
+        this.colors = colors;
+    }
+
+    /**
+     * Returns the level of a tile with the given luminance sum, rounded to the nearest level.
+     */
+    public static int toLevel(long brightness, long numPixels) {
+        return (int) ((2 * brightness + numPixels) / (2 * numPixels));
+    }
+
+    /**
+     * Returns where each of numTiles tiles evenly dividing size pixels starts, followed by
+     * size. Tiles differ in size by at most one pixel.
+     */
+    static int[] getTileBounds(int numTiles, int size) {
+        int[] bounds = new int[numTiles + 1];
+        for (int i = 0; i <= numTiles; i++) {
+            bounds[i] = (int) ((long) i * size / numTiles);
+        }
+        return bounds;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public int getLevel(int row, int col) {
+        return levels[row * cols + col];
+    }
+
+    public boolean hasColors() {
+        return colors != null;
+    }
+
+    /**
+     * Returns the average color of a tile as an RGB int.
+     *
+     * @throws IllegalStateException if the grid was measured without colors
+     */
+    public int getColor(int row, int col) {
+        if (colors == null) {
+            throw new IllegalStateException("The grid was measured without colors");
+        }
+        return colors[row * cols + col];
+    }
+
+    /**
+     * Returns the average colors of all tiles as RGB ints, in a row for every row of tiles.
+     *
+     * @throws IllegalStateException if the grid was measured without colors
+     */
+    public int[][] getColors() {
+        int[][] rowColors = new int[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                rowColors[row][col] = getColor(row, col);
+            }
+        }
+        return rowColors;
+    }
+
+    public int getMinLevel() {
+        return minLevel;
+    }
+
+    public int getMaxLevel() {
+        return maxLevel;
+    }
+}
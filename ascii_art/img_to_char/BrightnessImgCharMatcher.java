@@ -1,93 +1,296 @@
 package ascii_art.img_to_char;
 import image.Image;
+import image.IntegralImage;
+import image.LuminanceKernel;
+import metrics.Metrics;
+import metrics.Stage;
 
-import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
-
-import static java.lang.Math.round;
+import java.util.Arrays;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.BooleanSupplier;
 
 public class BrightnessImgCharMatcher {
-    private final int minBrightness = 0;
-    private final int maxBrightness = 255;
+    private static final BooleanSupplier NEVER_CANCELLED = () -> false;
+    // Grids with fewer tiles than this are matched on the calling thread
+    private static final int MIN_PARALLEL_TILES = 128 * 128;
+    private static final int MIN_ROWS_PER_TASK = 8;
+
     public char[] charSet = {' ', '.', ':', '-', '=', '+', '*', '#', '%', '@'};
     private final Image img;
     private final String fontName;
+    private final ForkJoinPool pool;
 
     public BrightnessImgCharMatcher(Image img, String fontName) {
+        this(img, fontName, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool the pool large grids are matched on, split by rows
+     */
+    public BrightnessImgCharMatcher(Image img, String fontName, ForkJoinPool pool) {
         this.img = img;
         this.fontName = fontName;
+        this.pool = pool;
     }
 
     public char[][] chooseChars(int numCharsInRow, char[] charSet) {
-        orderCharsByBrightness(charSet);
-        char[][] chars = new char[numCharsInRow][numCharsInRow];
-        int pixel_size = img.getHeight() / numCharsInRow;
-        Image[][] subImages = img.getRepixelatedImage(pixel_size);
-
-        for (int i = 0; i < numCharsInRow; i++) {
-            for (int j = 0; j < numCharsInRow; j++) {
-                chars[i][j] = chooseChar(subImages[i][j]);
-            }
-        }
+        return chooseChars(numCharsInRow, charSet, false);
+    }
 
-        return chars;
+    /**
+     * @param stretch whether to spread the characters over the image's own range of
+     *                brightness, rather than over the full range from black to white
+     */
+    public char[][] chooseChars(int numCharsInRow, char[] charSet, boolean stretch) {
+        return chooseChars(getNumRows(numCharsInRow), numCharsInRow, charSet, stretch);
     }
 
-    private char chooseChar(Image img) {
-        int brightness = 0;
-        for (Color color : img.pixels()) {
-            brightness += getBrightness(color);
-        }
-        int size = img.getWidth() * img.getHeight() * maxBrightness;
-        double pixelBrightness = (double) brightness / (size);
-        int index = Math.toIntExact(round(pixelBrightness * (charSet.length - 1)));
-        return charSet[index];
+    /**
+     * Renders the image as a grid of the given number of rows and columns of characters.
+     */
+    public char[][] chooseChars(int rows, int cols, char[] charSet, boolean stretch) {
+        CharPalette palette = CharPalette.of(charSet, fontName);
+        this.charSet = palette.getChars();
+        return palette.map(getBrightnessGrid(rows, cols), stretch);
     }
 
-    private void orderCharsByBrightness(char[] charSet) {
-        Map<Character, Double> brightnessMap = new HashMap<>();
+    /**
+     * Renders the image like chooseChars, but chooses the character of every tile by how
+     * closely its shape follows the tile's, through a ShapeMatcher.
+     */
+    public char[][] chooseCharsByShape(int numCharsInRow, char[] charSet) {
+        return chooseCharsByShape(numCharsInRow, charSet, NEVER_CANCELLED);
+    }
 
-        // Iterate through the charSet and calculate brightness
-        for (int i = 0; i < charSet.length; i++) {
-            char c = charSet[i];
-            if (!brightnessMap.containsKey(c)) {
-                brightnessMap.put(c, getBrightness(c));
-            }
-            double brightness = brightnessMap.get(c);
+    /**
+     * Like chooseCharsByShape, stopping between rows of tiles once isCancelled is true.
+     *
+     * @throws CancellationException if the matching was cancelled
+     */
+    public char[][] chooseCharsByShape(int numCharsInRow, char[] charSet, BooleanSupplier isCancelled) {
+        ShapeMatcher matcher = ShapeMatcher.of(charSet, fontName);
+        this.charSet = CharPalette.of(charSet, fontName).getChars();
+        return matcher.match(img, getNumRows(numCharsInRow), numCharsInRow, isCancelled);
+    }
 
-            // Use a temporary variable to avoid modifying the original charSet during sorting
-            char temp = charSet[i];
+    /**
+     * Returns the number of rows of a grid with numCharsInRow columns whose tiles are
+     * as close as possible to square.
+     */
+    public int getNumRows(int numCharsInRow) {
+        return getNumRows(img, numCharsInRow);
+    }
 
-            // Find the insertion position based on the brightness
-            int j = i - 1;
-            while (j >= 0 && brightnessMap.get(charSet[j]) > brightness) {
-                charSet[j + 1] = charSet[j];
-                j--;
-            }
+    static int getNumRows(Image img, int numCharsInRow) {
+        return Math.max(1, (int) ((long) img.getHeight() * numCharsInRow / img.getWidth()));
+    }
+
+    /**
+     * Divides the image into tiles, numCharsInRow in every row, as close as possible to
+     * square, and measures the brightness of each.
+     */
+    public BrightnessGrid getBrightnessGrid(int numCharsInRow) {
+        return getBrightnessGrid(getNumRows(numCharsInRow), numCharsInRow);
+    }
+
+    /**
+     * Like getBrightnessGrid, stopping between rows of tiles once isCancelled is true.
+     *
+     * @throws CancellationException if the measurement was cancelled
+     */
+    public BrightnessGrid getBrightnessGrid(int numCharsInRow, BooleanSupplier isCancelled) {
+        return measure(getNumRows(numCharsInRow), numCharsInRow, false, isCancelled);
+    }
+
+    /**
+     * Divides the image into rows x cols tiles and measures the brightness of each.
+     * Tiles cover the image exactly, and differ in size by at most one pixel.
+     *
+     * @throws IllegalArgumentException if there are more rows or columns than pixels
+     */
+    public BrightnessGrid getBrightnessGrid(int rows, int cols) {
+        return measure(rows, cols, false, NEVER_CANCELLED);
+    }
+
+    /**
+     * Like getBrightnessGrid, but also averages the color of every tile in the same pass
+     * over the pixels.
+     */
+    public BrightnessGrid getColoredGrid(int numCharsInRow) {
+        return getColoredGrid(numCharsInRow, NEVER_CANCELLED);
+    }
+
+    /**
+     * Like getColoredGrid, stopping between rows of tiles once isCancelled is true.
+     *
+     * @throws CancellationException if the measurement was cancelled
+     */
+    public BrightnessGrid getColoredGrid(int numCharsInRow, BooleanSupplier isCancelled) {
+        return measure(getNumRows(numCharsInRow), numCharsInRow, true, isCancelled);
+    }
+
+    private BrightnessGrid measure(int rows, int cols, boolean withColors, BooleanSupplier isCancelled) {
+        if (rows < 1 || cols < 1 || rows > img.getHeight() || cols > img.getWidth()) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot divide a %dx%d image into %dx%d tiles", img.getWidth(), img.getHeight(), cols, rows));
+        }
+        GridPass pass = new GridPass(rows, cols, img, withColors, isCancelled);
 
-            // Place the current character at the correct position
-            charSet[j + 1] = temp;
+        Metrics.Span span = Metrics.start(Stage.MEASURE);
+        if (rows * cols < MIN_PARALLEL_TILES) {
+            pass.measureRows(0, rows);
+        } else {
+            pool.invoke(new MeasureRowsTask(pass, 0, rows));
         }
+        span.end(0, (long) rows * cols, 0);
 
-        this.charSet = charSet;
+        return pass.toGrid();
     }
 
-    private double getBrightness(char c) {
-        boolean[][] charImg = CharRenderer.getImg(c, 16, fontName);
-        int brightness = 0;
-        for (boolean[] booleans : charImg) {
-            for (boolean aBoolean : booleans) {
-                if (aBoolean) {
-                    brightness++;
+    /**
+     * Renders the ASCII characters (0-127) of the given font in the background, so the
+     * first render using them does not have to.
+     */
+    public static void warmUp(String fontName) {
+        CharRenderer.warmUp((char) 0, (char) 127, CharPalette.CHAR_RESOLUTION, fontName);
+    }
+
+    /**
+     * The state of a single measurement of a grid, whose rows may be filled concurrently.
+     */
+    private static class GridPass {
+        private final int rows;
+        private final int cols;
+        private final int[] tileX;
+        private final int[] tileY;
+        private final Image img;
+        private final IntegralImage integralImage;
+        private final int[] levels;
+        private final int[] colors;
+        private final int[] rowMin;
+        private final int[] rowMax;
+        private final BooleanSupplier isCancelled;
+
+        GridPass(int rows, int cols, Image img, boolean withColors, BooleanSupplier isCancelled) {
+            this.rows = rows;
+            this.cols = cols;
+            this.img = img;
+            tileX = BrightnessGrid.getTileBounds(cols, img.getWidth());
+            tileY = BrightnessGrid.getTileBounds(rows, img.getHeight());
+            // Colors are summed straight from the pixels, along with the brightness
+            integralImage = withColors ? null : img.getIntegralImage();
+            levels = new int[rows * cols];
+            colors = withColors ? new int[rows * cols] : null;
+            rowMin = new int[rows];
+            rowMax = new int[rows];
+            this.isCancelled = isCancelled;
+        }
+
+        void measureRows(int fromRow, int toRow) {
+            if (colors != null) {
+                measureColoredRows(fromRow, toRow);
+                return;
+            }
+            for (int i = fromRow; i < toRow; i++) {
+                checkCancelled();
+                int y = tileY[i], height = tileY[i + 1] - y;
+                int min = BrightnessGrid.MAX_LEVEL, max = 0;
+                for (int j = 0; j < cols; j++) {
+                    int x = tileX[j], width = tileX[j + 1] - x;
+                    long brightness = integralImage.getSum(x, y, width, height);
+                    int level = BrightnessGrid.toLevel(brightness, (long) width * height);
+                    levels[i * cols + j] = level;
+                    min = Math.min(min, level);
+                    max = Math.max(max, level);
                 }
+                rowMin[i] = min;
+                rowMax[i] = max;
+            }
+        }
+
+        private void measureColoredRows(int fromRow, int toRow) {
+            long[] brightness = new long[cols], red = new long[cols], green = new long[cols], blue = new long[cols];
+            int[] pixels = new int[img.getWidth()];
+            LuminanceKernel kernel = LuminanceKernel.get();
+            for (int i = fromRow; i < toRow; i++) {
+                checkCancelled();
+                Arrays.fill(brightness, 0);
+                Arrays.fill(red, 0);
+                Arrays.fill(green, 0);
+                Arrays.fill(blue, 0);
+                for (int y = tileY[i]; y < tileY[i + 1]; y++) {
+                    img.getArgbRow(0, y, pixels.length, pixels, 0);
+                    for (int j = 0; j < cols; j++) {
+                        brightness[j] += kernel.sum(pixels, tileX[j], tileX[j + 1] - tileX[j]);
+                        for (int x = tileX[j]; x < tileX[j + 1]; x++) {
+                            int argb = pixels[x];
+                            red[j] += (argb >> 16) & 0xFF;
+                            green[j] += (argb >> 8) & 0xFF;
+                            blue[j] += argb & 0xFF;
+                        }
+                    }
+                }
+
+                long height = tileY[i + 1] - tileY[i];
+                int min = BrightnessGrid.MAX_LEVEL, max = 0;
+                for (int j = 0; j < cols; j++) {
+                    long numPixels = height * (tileX[j + 1] - tileX[j]);
+                    int level = BrightnessGrid.toLevel(brightness[j], numPixels);
+                    levels[i * cols + j] = level;
+                    colors[i * cols + j] = (BrightnessGrid.toLevel(red[j], numPixels) << 16) |
+                            (BrightnessGrid.toLevel(green[j], numPixels) << 8) |
+                            BrightnessGrid.toLevel(blue[j], numPixels);
+                    min = Math.min(min, level);
+                    max = Math.max(max, level);
+                }
+                rowMin[i] = min;
+                rowMax[i] = max;
             }
         }
-        return (double) (brightness - minBrightness) / (maxBrightness - minBrightness);
-    }
 
-    private int getBrightness(Color color) {
-        return (int) (color.getRed() * 0.2126 + color.getGreen() * 0.7152 + color.getBlue() * 0.0722);
+        private void checkCancelled() {
+            if (isCancelled.getAsBoolean()) {
+                throw new CancellationException("The measurement was cancelled");
+            }
+        }
+
+        BrightnessGrid toGrid() {
+            int min = BrightnessGrid.MAX_LEVEL, max = 0;
+            for (int i = 0; i < rows; i++) {
+                min = Math.min(min, rowMin[i]);
+                max = Math.max(max, rowMax[i]);
+            }
+            return new BrightnessGrid(rows, cols, levels, min, max, colors);
+        }
     }
 
+    /**
+     * Measures a range of rows, splitting it in halves until it is small enough.
+     */
+    private static class MeasureRowsTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final GridPass pass;
+        private final int fromRow;
+        private final int toRow;
+
+        MeasureRowsTask(GridPass pass, int fromRow, int toRow) {
+            this.pass = pass;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= MIN_ROWS_PER_TASK) {
+                pass.measureRows(fromRow, toRow);
+                return;
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new MeasureRowsTask(pass, fromRow, middle),
+                    new MeasureRowsTask(pass, middle, toRow));
+        }
+    }
 }
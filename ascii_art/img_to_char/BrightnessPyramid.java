@@ -0,0 +1,108 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import metrics.Metrics;
+import metrics.Stage;
+
+/**
+ * The brightness of an image at a series of resolutions, like a mipmap: every level has
+ * half the columns of the level before it, and as many rows as
+ * BrightnessImgCharMatcher.getNumRows gives for them, so tiles stay as close to square as
+ * a grid measured directly. Where a level has exactly half the rows of the finer level,
+ * each of its tiles covers exactly 2x2 tiles of that level, and it is reduced from that
+ * level when it is kept. Otherwise it is measured through the image's integral image, so
+ * any level takes time proportional to its number of tiles.
+ * <p>
+ * Levels are built when first asked for and kept within a memory budget. A level that
+ * does not fit makes room by dropping the finest levels kept.
+ */
+public class BrightnessPyramid {
+    private final Image img;
+    private final long budgetBytes;
+    private final int[] cols;
+    private final int[] rows;
+    private final long[][] sums;
+    private long usedBytes = 0;
+
+    /**
+     * @param finestCols  the number of columns of the finest level, at most the image width
+     * @param maxLevels   the largest number of levels, including the finest. There are fewer
+     *                    when finestCols cannot be halved that many times.
+     * @param budgetBytes the memory the kept levels may take together
+     */
+    public BrightnessPyramid(Image img, int finestCols, int maxLevels, long budgetBytes) {
+        this.img = img;
+        this.budgetBytes = budgetBytes;
+
+        int numLevels = Math.max(1, Math.min(maxLevels, Integer.numberOfTrailingZeros(finestCols) + 1));
+        cols = new int[numLevels];
+        rows = new int[numLevels];
+        sums = new long[numLevels][];
+        for (int level = 0; level < numLevels; level++) {
+            cols[level] = finestCols >> level;
+            rows[level] = BrightnessImgCharMatcher.getNumRows(img, cols[level]);
+        }
+    }
+
+    /**
+     * Returns the level with the given number of columns, or null if there is none.
+     */
+    public synchronized BrightnessGrid getGrid(int numCharsInRow) {
+        for (int level = 0; level < cols.length; level++) {
+            if (cols[level] == numCharsInRow) {
+                return toGrid(level, getSums(level));
+            }
+        }
+        return null;
+    }
+
+    private long[] getSums(int level) {
+        if (sums[level] != null) {
+            return sums[level];
+        }
+        Metrics.Span span = Metrics.start(Stage.MEASURE);
+        boolean nests = level > 0 && rows[level - 1] == 2 * rows[level];
+        long[] levelSums = nests && sums[level - 1] != null ? reduce(level) : measure(level);
+        span.end(0, levelSums.length, 0);
+        keep(level, levelSums);
+        return levelSums;
+    }
+
+    private long[] measure(int level) {
+        return TileSums.measure(img.getIntegralImage(), BrightnessGrid.getTileBounds(cols[level], img.getWidth()),
+                BrightnessGrid.getTileBounds(rows[level], img.getHeight()));
+    }
+
+    private long[] reduce(int level) {
+        long[] finer = sums[level - 1];
+        int finerCols = cols[level - 1];
+        long[] levelSums = new long[rows[level] * cols[level]];
+        for (int i = 0; i < rows[level]; i++) {
+            int top = 2 * i * finerCols, bottom = top + finerCols;
+            for (int j = 0; j < cols[level]; j++) {
+                levelSums[i * cols[level] + j] = finer[top + 2 * j] + finer[top + 2 * j + 1] +
+                        finer[bottom + 2 * j] + finer[bottom + 2 * j + 1];
+            }
+        }
+        return levelSums;
+    }
+
+    private void keep(int level, long[] levelSums) {
+        long bytes = (long) levelSums.length * Long.BYTES;
+        for (int finest = 0; usedBytes + bytes > budgetBytes && finest < level; finest++) {
+            if (sums[finest] != null) {
+                usedBytes -= (long) sums[finest].length * Long.BYTES;
+                sums[finest] = null;
+            }
+        }
+        if (usedBytes + bytes <= budgetBytes) {
+            sums[level] = levelSums;
+            usedBytes += bytes;
+        }
+    }
+
+    private BrightnessGrid toGrid(int level, long[] levelSums) {
+        return TileSums.toGrid(levelSums, BrightnessGrid.getTileBounds(cols[level], img.getWidth()),
+                BrightnessGrid.getTileBounds(rows[level], img.getHeight()));
+    }
+}
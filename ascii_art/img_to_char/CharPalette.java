@@ -0,0 +1,124 @@
+package ascii_art.img_to_char;
+
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A set of characters ordered by brightness, compiled into a table that maps every
+ * brightness level (0-255) straight to the character drawn for it.
+ * Palettes are built once per (charset, font) and shared between renders.
+ */
+public class CharPalette {
+    static final int CHAR_RESOLUTION = 16;
+    private static final int MAX_CACHED_PALETTES = 256;
+
+    private static final Map<PaletteKey, CharPalette> cache = new ConcurrentHashMap<>();
+
+    private record PaletteKey(String fontName, String chars) {
+    }
+
+    private final char[] chars;
+    private final char[] table;
+
+    private CharPalette(char[] chars, char[] table) {
+        this.chars = chars;
+        this.table = table;
+    }
+
+    /**
+     * Returns the palette of the given characters as drawn in the given font.
+     * Duplicate characters and the order of charSet are ignored.
+     *
+     * @throws IllegalArgumentException if charSet is empty
+     */
+    public static CharPalette of(char[] charSet, String fontName) {
+        if (charSet.length == 0) {
+            throw new IllegalArgumentException("Cannot build a palette of no characters");
+        }
+        char[] sorted = charSet.clone();
+        Arrays.sort(sorted);
+        PaletteKey key = new PaletteKey(fontName, new String(sorted));
+        CharPalette palette = cache.get(key);
+        if (palette == null) {
+            if (cache.size() >= MAX_CACHED_PALETTES) {
+                cache.clear();
+            }
+            palette = cache.computeIfAbsent(key, k -> compile(k.chars(), fontName));
+        }
+        return palette;
+    }
+
+    private static CharPalette compile(String charSet, String fontName) {
+        Character[] ordered = charSet.chars().distinct().mapToObj(c -> (char) c).toArray(Character[]::new);
+        Arrays.sort(ordered, Comparator
+                .comparingInt((Character c) -> CharRenderer.getBrightPixels(c, CHAR_RESOLUTION, fontName))
+                .thenComparing(c -> c));
+        char[] chars = new char[ordered.length];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = ordered[i];
+        }
+
+        char[] table = new char[BrightnessGrid.MAX_LEVEL + 1];
+        int last = chars.length - 1;
+        for (int level = 0; level < table.length; level++) {
+            int index = (2 * level * last + BrightnessGrid.MAX_LEVEL) / (2 * BrightnessGrid.MAX_LEVEL);
+            table[level] = chars[index];
+        }
+        return new CharPalette(chars, table);
+    }
+
+    /**
+     * Returns the characters of the palette, from the darkest to the brightest.
+     */
+    public char[] getChars() {
+        return chars.clone();
+    }
+
+    /**
+     * Returns the character drawn for a brightness level.
+     */
+    public char charAt(int level) {
+        return table[level];
+    }
+
+    /**
+     * Returns a palette spreading its characters over the levels [minLevel, maxLevel]
+     * instead of [0, 255]. Levels outside the range get the darkest or brightest character.
+     */
+    public CharPalette stretched(int minLevel, int maxLevel) {
+        if (maxLevel <= minLevel) {
+            return this;
+        }
+        int range = maxLevel - minLevel;
+        char[] stretched = new char[table.length];
+        for (int level = 0; level < table.length; level++) {
+            int clamped = Math.max(minLevel, Math.min(maxLevel, level));
+            stretched[level] = table[(2 * (clamped - minLevel) * BrightnessGrid.MAX_LEVEL + range) / (2 * range)];
+        }
+        return new CharPalette(chars, stretched);
+    }
+
+    /**
+     * Maps every tile of the grid to its character.
+     *
+     * @param stretch whether to spread the characters over the grid's own range of levels
+     */
+    public char[][] map(BrightnessGrid grid, boolean stretch) {
+        char[] table = stretch ? stretched(grid.getMinLevel(), grid.getMaxLevel()).table : this.table;
+        Metrics.Span span = Metrics.start(Stage.MATCH);
+        char[][] mapped = new char[grid.getRows()][grid.getCols()];
+        for (int row = 0; row < mapped.length; row++) {
+            char[] chars = mapped[row];
+            for (int col = 0; col < chars.length; col++) {
+                chars[col] = table[grid.getLevel(row, col)];
+            }
+        }
+        span.end(0, (long) grid.getRows() * grid.getCols(), 0);
+        return mapped;
+    }
+}
@@ -1,7 +1,13 @@
 package ascii_art.img_to_char;
 
+import metrics.Metrics;
+import metrics.Stage;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Inspired by, and partly copied from
@@ -10,24 +16,79 @@ import java.awt.image.BufferedImage;
  * https://dzone.com/articles/ascii-art-generator-java
  * Adaptations made by Dan Nirel.
  * The class renders (draws) characters to a binary "image" (2D array of booleans).
+ * Rendered characters are cached for the lifetime of the process, and the cache may be
+ * shared between threads.
  */
 public class CharRenderer {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
 
+    private static final Map<GlyphKey, Glyph> glyphCache = new ConcurrentHashMap<>();
+    private static final Map<FontKey, Font> fontCache = new ConcurrentHashMap<>();
+
+    private record GlyphKey(String fontName, int pixels, char c) {
+    }
+
+    private record FontKey(String fontName, int pixels) {
+    }
+
+    private record Glyph(boolean[][] img, int brightPixels) {
+    }
+
     /**
      * Renders a given character, according to how it looks in the font specified in the
      * constructor, to a square black&white image (2D array of booleans),
      * whose dimension in pixels is specified.
+     * The returned array is shared with other callers and must not be modified.
      */
     public static boolean[][] getImg(char c, int pixels, String fontName) {
-        int key = (pixels << 8) | c;
-        return render(c, pixels, fontName);
+        return getGlyph(c, pixels, fontName).img();
+    }
+
+    /**
+     * Returns the number of true (background) pixels in the image of the given character,
+     * as rendered by getImg.
+     */
+    public static int getBrightPixels(char c, int pixels, String fontName) {
+        return getGlyph(c, pixels, fontName).brightPixels();
+    }
+
+    /**
+     * Renders all characters in the range [first, last] in the background, so that later
+     * calls for them are served from the cache.
+     *
+     * @return a future completing once all the characters are cached
+     */
+    public static CompletableFuture<Void> warmUp(char first, char last, int pixels, String fontName) {
+        return CompletableFuture.runAsync(() -> {
+            for (char c = first; c <= last; c++) {
+                getGlyph(c, pixels, fontName);
+            }
+        });
+    }
+
+    private static Glyph getGlyph(char c, int pixels, String fontName) {
+        return glyphCache.computeIfAbsent(new GlyphKey(fontName, pixels, c),
+                key -> toGlyph(render(c, pixels, fontName)));
+    }
+
+    private static Glyph toGlyph(boolean[][] img) {
+        int brightPixels = 0;
+        for (boolean[] booleans : img) {
+            for (boolean aBoolean : booleans) {
+                if (aBoolean) {
+                    brightPixels++;
+                }
+            }
+        }
+        return new Glyph(img, brightPixels);
     }
 
     private static boolean[][] render(char c, int pixels, String fontName) {
+        Metrics.Span span = Metrics.start(Stage.RASTERIZE);
         String charStr = Character.toString(c);
-        Font font = new Font(fontName, Font.PLAIN, pixels);
+        Font font = fontCache.computeIfAbsent(new FontKey(fontName, pixels),
+                key -> new Font(fontName, Font.PLAIN, pixels));
         BufferedImage img = new BufferedImage(pixels, pixels, BufferedImage.TYPE_INT_ARGB);
         Graphics g = img.getGraphics();
         g.setFont(font);
@@ -40,6 +101,7 @@ public class CharRenderer {
                 matrix[y][x] = img.getRGB(x, y) == 0; //is the color black
             }
         }
+        span.end((long) pixels * pixels, 1, 0);
         return matrix;
     }
 
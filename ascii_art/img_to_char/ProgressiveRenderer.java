@@ -0,0 +1,70 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.IntegralImage;
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.util.function.Consumer;
+
+/**
+ * Renders an image coarse to fine, so something is shown long before the full render is
+ * done. The first grid has a quarter of the columns asked for, and every grid after it
+ * doubles them, until the full resolution. Every grid has as many rows as
+ * BrightnessImgCharMatcher.getNumRows gives for its columns, so the last one is exactly
+ * the grid a direct render measures. Every grid after the first reuses the sums of the one
+ * before it: where a tile of that grid is split exactly into tiles of the finer grid, as
+ * every tile is when both columns and rows double, all but one of them are measured
+ * through the integral image, and the last is what is left of the tile's sum. Tiles that
+ * do not nest are measured.
+ */
+public class ProgressiveRenderer {
+    private static final int MAX_REFINEMENTS = 2;
+
+    private final Image img;
+    private final String fontName;
+
+    public ProgressiveRenderer(Image img, String fontName) {
+        this.img = img;
+        this.fontName = fontName;
+    }
+
+    /**
+     * Renders the image with numCharsInRow columns and getNumRows rows. Each grid is handed
+     * to onGrid as soon as it is mapped to chars, coarsest first.
+     *
+     * @param stretch whether to spread the characters over each grid's own range of levels
+     * @return the final, full resolution grid
+     * @throws IllegalArgumentException if there are more columns than pixels in a row
+     */
+    public char[][] render(int numCharsInRow, char[] charSet, boolean stretch, Consumer<char[][]> onGrid) {
+        if (numCharsInRow < 1 || numCharsInRow > img.getWidth()) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot divide a %d pixel wide image into %d columns", img.getWidth(), numCharsInRow));
+        }
+        int refinements = 0;
+        while (refinements < MAX_REFINEMENTS && numCharsInRow >> (refinements + 1) > 0) {
+            refinements++;
+        }
+
+        CharPalette palette = CharPalette.of(charSet, fontName);
+        IntegralImage integralImage = img.getIntegralImage();
+        long[] sums = null;
+        int[] levelX = null, levelY = null;
+        char[][] chars = null;
+        for (int i = refinements; i >= 0; i--) {
+            int cols = numCharsInRow >> i, rows = BrightnessImgCharMatcher.getNumRows(img, cols);
+            int[] tileX = BrightnessGrid.getTileBounds(cols, img.getWidth());
+            int[] tileY = BrightnessGrid.getTileBounds(rows, img.getHeight());
+            Metrics.Span span = Metrics.start(Stage.MEASURE);
+            sums = sums == null ? TileSums.measure(integralImage, tileX, tileY)
+                    : TileSums.refine(integralImage, sums, levelX, levelY, tileX, tileY);
+            span.end(0, sums.length, 0);
+            levelX = tileX;
+            levelY = tileY;
+            chars = palette.map(TileSums.toGrid(sums, tileX, tileY), stretch);
+            onGrid.accept(chars);
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,181 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import image.IntegralImage;
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Chooses characters by shape rather than by brightness alone. Every glyph and every tile
+ * is reduced to an 8x8 bitmap of ink packed into a single long, one bit per cell. A glyph
+ * cell has ink when any of its pixels is dark, and a tile cell when it is clearly darker
+ * than the tile around it. Tiles are scored against every glyph by the cells their bitmaps
+ * differ in, counted with XOR and Long.bitCount, plus how far the tile's brightness is
+ * from the brightness the glyph stands for in the palette, so flat areas still get
+ * characters of their brightness.
+ * <p>
+ * Matchers are built once per (charset, font) and shared.
+ */
+public class ShapeMatcher {
+    private static final int BITMAP_SIZE = 8;
+    private static final int GLYPH_SCALE = CharPalette.CHAR_RESOLUTION / BITMAP_SIZE;
+    private static final int MAX_CACHED_MATCHERS = 256;
+    // How many levels of brightness a single cell of difference in shape is worth
+    private static final int SHAPE_WEIGHT = 8;
+    // How much darker than its tile a cell must be to have ink, in levels
+    private static final int INK_CONTRAST = 16;
+
+    private static final Map<MatcherKey, ShapeMatcher> cache = new ConcurrentHashMap<>();
+
+    private record MatcherKey(String fontName, String chars) {
+    }
+
+    private final char[] chars;
+    private final long[] bitmaps;
+    private final int[] levels;
+
+    private ShapeMatcher(char[] chars, long[] bitmaps, int[] levels) {
+        this.chars = chars;
+        this.bitmaps = bitmaps;
+        this.levels = levels;
+    }
+
+    /**
+     * Returns the matcher of the given characters as drawn in the given font.
+     * Duplicate characters and the order of charSet are ignored.
+     *
+     * @throws IllegalArgumentException if charSet is empty
+     */
+    public static ShapeMatcher of(char[] charSet, String fontName) {
+        // The palette orders the characters, which sets the brightness each stands for
+        char[] chars = CharPalette.of(charSet, fontName).getChars();
+        MatcherKey key = new MatcherKey(fontName, new String(chars));
+        ShapeMatcher matcher = cache.get(key);
+        if (matcher == null) {
+            if (cache.size() >= MAX_CACHED_MATCHERS) {
+                cache.clear();
+            }
+            matcher = cache.computeIfAbsent(key, k -> compile(chars, fontName));
+        }
+        return matcher;
+    }
+
+    private static ShapeMatcher compile(char[] chars, String fontName) {
+        long[] bitmaps = new long[chars.length];
+        int[] levels = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            bitmaps[i] = toBitmap(CharRenderer.getImg(chars[i], CharPalette.CHAR_RESOLUTION, fontName));
+            levels[i] = chars.length == 1 ? 0 : i * BrightnessGrid.MAX_LEVEL / (chars.length - 1);
+        }
+        return new ShapeMatcher(chars, bitmaps, levels);
+    }
+
+    /**
+     * Packs a glyph into a bitmap, setting the bit of a cell when any of its pixels is dark.
+     */
+    private static long toBitmap(boolean[][] img) {
+        long bitmap = 0;
+        for (int row = 0; row < BITMAP_SIZE; row++) {
+            for (int col = 0; col < BITMAP_SIZE; col++) {
+                boolean hasInk = false;
+                for (int y = row * GLYPH_SCALE; y < (row + 1) * GLYPH_SCALE; y++) {
+                    for (int x = col * GLYPH_SCALE; x < (col + 1) * GLYPH_SCALE; x++) {
+                        hasInk |= !img[y][x];
+                    }
+                }
+                if (hasInk) {
+                    bitmap |= 1L << (row * BITMAP_SIZE + col);
+                }
+            }
+        }
+        return bitmap;
+    }
+
+    /**
+     * Divides the image into rows x cols tiles, as BrightnessImgCharMatcher does, and
+     * chooses the character of each by its shape.
+     *
+     * @throws IllegalArgumentException if there are more rows or columns than pixels
+     */
+    public char[][] match(Image img, int rows, int cols) {
+        return match(img, rows, cols, () -> false);
+    }
+
+    /**
+     * Like match, stopping between rows of tiles once isCancelled is true.
+     *
+     * @throws CancellationException if the matching was cancelled
+     */
+    public char[][] match(Image img, int rows, int cols, BooleanSupplier isCancelled) {
+        if (rows < 1 || cols < 1 || rows > img.getHeight() || cols > img.getWidth()) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot divide a %dx%d image into %dx%d tiles", img.getWidth(), img.getHeight(), cols, rows));
+        }
+        IntegralImage integralImage = img.getIntegralImage();
+        Metrics.Span span = Metrics.start(Stage.MATCH);
+        int[] tileX = BrightnessGrid.getTileBounds(cols, img.getWidth());
+        int[] tileY = BrightnessGrid.getTileBounds(rows, img.getHeight());
+
+        char[][] matched = new char[rows][cols];
+        int[] cellX = new int[BITMAP_SIZE], cellWidths = new int[BITMAP_SIZE];
+        int[] cellY = new int[BITMAP_SIZE], cellHeights = new int[BITMAP_SIZE];
+        for (int i = 0; i < rows; i++) {
+            if (isCancelled.getAsBoolean()) {
+                throw new CancellationException("The matching was cancelled");
+            }
+            int y = tileY[i], height = tileY[i + 1] - y;
+            getCells(y, height, cellY, cellHeights);
+            for (int j = 0; j < cols; j++) {
+                int x = tileX[j], width = tileX[j + 1] - x;
+                getCells(x, width, cellX, cellWidths);
+                long tileArea = (long) width * height;
+                long tileSum = integralImage.getSum(x, y, width, height);
+                long inkThreshold = tileSum - INK_CONTRAST * tileArea;
+
+                long bitmap = 0;
+                for (int row = 0; row < BITMAP_SIZE; row++) {
+                    for (int col = 0; col < BITMAP_SIZE; col++) {
+                        long cellArea = (long) cellWidths[col] * cellHeights[row];
+                        long sum = integralImage.getSum(cellX[col], cellY[row], cellWidths[col], cellHeights[row]);
+                        // The cell's mean is below the tile's by the contrast, without dividing
+                        if (sum * tileArea < inkThreshold * cellArea) {
+                            bitmap |= 1L << (row * BITMAP_SIZE + col);
+                        }
+                    }
+                }
+                matched[i][j] = closest(bitmap, BrightnessGrid.toLevel(tileSum, tileArea));
+            }
+        }
+        span.end((long) img.getWidth() * img.getHeight(), (long) rows * cols, 0);
+        return matched;
+    }
+
+    /**
+     * Splits [start, start + size) into BITMAP_SIZE cells of at least one pixel each, filling
+     * in where each cell starts and how wide it is. Cells overlap when there are fewer pixels
+     * than cells.
+     */
+    private static void getCells(int start, int size, int[] cellStarts, int[] cellSizes) {
+        for (int k = 0; k < BITMAP_SIZE; k++) {
+            cellStarts[k] = start + k * size / BITMAP_SIZE;
+            cellSizes[k] = Math.max(1, start + (k + 1) * size / BITMAP_SIZE - cellStarts[k]);
+        }
+    }
+
+    private char closest(long bitmap, int level) {
+        int best = 0, bestScore = Integer.MAX_VALUE;
+        for (int i = 0; i < bitmaps.length; i++) {
+            int score = Long.bitCount(bitmap ^ bitmaps[i]) * SHAPE_WEIGHT + Math.abs(level - levels[i]);
+            if (score < bestScore) {
+                best = i;
+                bestScore = score;
+            }
+        }
+        return chars[best];
+    }
+}
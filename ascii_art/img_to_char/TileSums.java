@@ -0,0 +1,109 @@
+package ascii_art.img_to_char;
+
+import image.IntegralImage;
+
+import java.util.Arrays;
+
+/**
+ * A package-private class of the package ascii_art.img_to_char.
+ * Measures the luminance sums of the tiles of a grid through an integral image, row after
+ * row, and turns them into levels. Tiles are given by their bounds, as getTileBounds
+ * returns them.
+ */
+final class TileSums {
+    private TileSums() {
+    }
+
+    /**
+     * Measures every tile.
+     */
+    static long[] measure(IntegralImage integralImage, int[] tileX, int[] tileY) {
+        int rows = tileY.length - 1, cols = tileX.length - 1;
+        long[] sums = new long[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                sums[i * cols + j] = measureTile(integralImage, tileX, tileY, i, j);
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Measures every tile, reusing the sums of a coarser grid of the same image. A coarse
+     * tile whose four bounds are all bounds of the grid nests a block of its tiles: all of
+     * them but the last are measured, and the last is what is left of the coarse tile's
+     * sum. Tiles outside such blocks are measured.
+     */
+    static long[] refine(IntegralImage integralImage, long[] coarseSums, int[] coarseX, int[] coarseY,
+                         int[] tileX, int[] tileY) {
+        int rows = tileY.length - 1, cols = tileX.length - 1, coarseCols = coarseX.length - 1;
+        int[] rowParents = getParents(coarseY, tileY), colParents = getParents(coarseX, tileX);
+        long[] sums = new long[rows * cols];
+        for (int i = 0; i < rows; i++) {
+            int parentRow = rowParents[i];
+            boolean isLastRow = parentRow >= 0 && (i + 1 == rows || rowParents[i + 1] != parentRow);
+            for (int j = 0; j < cols; j++) {
+                int parentCol = colParents[j];
+                boolean isLastCol = parentCol >= 0 && (j + 1 == cols || colParents[j + 1] != parentCol);
+                if (!isLastRow || !isLastCol) {
+                    sums[i * cols + j] = measureTile(integralImage, tileX, tileY, i, j);
+                    continue;
+                }
+                // The rest of the block came before, row after row
+                long rest = coarseSums[parentRow * coarseCols + parentCol];
+                for (int row = i; row >= 0 && rowParents[row] == parentRow; row--) {
+                    for (int col = j; col >= 0 && colParents[col] == parentCol; col--) {
+                        if (row != i || col != j) {
+                            rest -= sums[row * cols + col];
+                        }
+                    }
+                }
+                sums[i * cols + j] = rest;
+            }
+        }
+        return sums;
+    }
+
+    /**
+     * Returns the grid of the levels of the given sums.
+     */
+    static BrightnessGrid toGrid(long[] sums, int[] tileX, int[] tileY) {
+        int rows = tileY.length - 1, cols = tileX.length - 1;
+        int[] levels = new int[sums.length];
+        int min = BrightnessGrid.MAX_LEVEL, max = 0;
+        for (int i = 0; i < rows; i++) {
+            long height = tileY[i + 1] - tileY[i];
+            for (int j = 0; j < cols; j++) {
+                int index = i * cols + j;
+                levels[index] = BrightnessGrid.toLevel(sums[index], height * (tileX[j + 1] - tileX[j]));
+                min = Math.min(min, levels[index]);
+                max = Math.max(max, levels[index]);
+            }
+        }
+        return new BrightnessGrid(rows, cols, levels, min, max);
+    }
+
+    private static long measureTile(IntegralImage integralImage, int[] tileX, int[] tileY, int row, int col) {
+        return integralImage.getSum(tileX[col], tileY[row], tileX[col + 1] - tileX[col], tileY[row + 1] - tileY[row]);
+    }
+
+    /**
+     * Returns the coarse tile each tile lies in, along one axis, or -1 for a tile in a
+     * coarse tile which does not start and end on bounds of the tiles.
+     */
+    private static int[] getParents(int[] coarseBounds, int[] bounds) {
+        int[] parents = new int[bounds.length - 1];
+        int tile = 0;
+        for (int parent = 0; parent + 1 < coarseBounds.length; parent++) {
+            // The tiles starting in the coarse tile
+            int first = tile;
+            while (tile < parents.length && bounds[tile] < coarseBounds[parent + 1]) {
+                tile++;
+            }
+            boolean nests = tile > first && bounds[first] == coarseBounds[parent]
+                    && bounds[tile] == coarseBounds[parent + 1];
+            Arrays.fill(parents, first, tile, nests ? parent : -1);
+        }
+        return parents;
+    }
+}
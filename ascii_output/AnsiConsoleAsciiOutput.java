@@ -0,0 +1,184 @@
+package ascii_output;
+
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to an ANSI terminal, laid out like ConsoleAsciiOutput, redrawing
+ * only what changed since the previous output. The first grid is drawn whole where the
+ * cursor is, which should be at the start of a line. After that only the runs of changed
+ * cells are sent, each preceded by a cursor move, so the bytes written scale with the
+ * change rather than with the grid. A grid of other dimensions erases the previous one, and
+ * anything printed below it, and is drawn whole in its place. Every update is a single
+ * buffered write.
+ * <p>
+ * A grid drawn whole leaves the cursor at the start of the line below it, and every move is
+ * relative to that line, so the grid may be anywhere on the screen. Whoever prints below
+ * the grid between two outputs should say how many lines it printed with addLinesBelow,
+ * so the next output moves up past them. Changes are then written between saving the
+ * cursor and restoring it, leaving whatever was printed, and the cursor, where they were.
+ * Rows which have scrolled off the top of the screen cannot be redrawn, so grids and what
+ * is printed below them should fit the terminal.
+ */
+public class AnsiConsoleAsciiOutput implements AsciiOutput {
+    // Unchanged cells between two changed ones are rewritten rather than skipped with a
+    // cursor move when there are at most this many, since a move takes several bytes
+    private static final int MAX_GAP = 4;
+    private static final byte[] ERASE_BELOW = "\033[J".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] SAVE_CURSOR = "\0337".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] RESTORE_CURSOR = "\0338".getBytes(StandardCharsets.US_ASCII);
+    private static final char SPACE = ' ';
+
+    private final PrintStream out;
+    private final boolean spaced;
+    private char[][] previous;
+    // The row of the grid the cursor is on while writing changes
+    private int cursorRow;
+    // The lines printed below the grid since it was drawn whole
+    private int linesBelow;
+
+    public AnsiConsoleAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * @param out the terminal to write to. It is flushed, not closed.
+     */
+    public AnsiConsoleAsciiOutput(OutputStream out) {
+        this(out, true);
+    }
+
+    /**
+     * @param spaced whether to follow every char with a space, as the other constructors do
+     */
+    public AnsiConsoleAsciiOutput(OutputStream out, boolean spaced) {
+        this.out = out instanceof PrintStream printStream ? printStream : new PrintStream(out);
+        this.spaced = spaced;
+    }
+
+    @Override
+    public void output(char[][] chars) {
+        Metrics.Span span = Metrics.start(Stage.OUTPUT);
+        RowWriter writer = new RowWriter(Channels.newChannel(out), null);
+        try {
+            long changed;
+            if (previous == null || previous.length != chars.length || previous[0].length != chars[0].length) {
+                if (previous != null) {
+                    cursorRow = previous.length + linesBelow;
+                    moveCursor(writer, 0, 0);
+                    writer.writeBytes(ERASE_BELOW);
+                }
+                for (char[] row : chars) {
+                    writer.writeRow(row, spaced);
+                }
+                linesBelow = 0;
+                changed = (long) chars.length * chars[0].length;
+            } else {
+                writer.writeBytes(SAVE_CURSOR);
+                cursorRow = chars.length + linesBelow;
+                changed = writeChanges(writer, chars);
+                writer.writeBytes(RESTORE_CURSOR);
+            }
+            writer.flush();
+            remember(chars);
+            span.end(0, changed, writer.getBytesWritten());
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
+        }
+        out.flush();
+    }
+
+    /**
+     * Forgets the last grid drawn, so the next output is drawn whole where the cursor is,
+     * which should be at the start of a line.
+     */
+    public void reset() {
+        previous = null;
+        linesBelow = 0;
+    }
+
+    /**
+     * Notes that lines were printed since the last output, the cursor having moved down by
+     * that many, so the next output finds the grid above them. The cursor may be anywhere
+     * on the last line.
+     */
+    public void addLinesBelow(int lines) {
+        linesBelow += lines;
+    }
+
+    private long writeChanges(RowWriter writer, char[][] chars) throws IOException {
+        long changed = 0;
+        for (int row = 0; row < chars.length; row++) {
+            char[] current = chars[row], old = previous[row];
+            int col = nextChange(current, old, 0);
+            while (col < current.length) {
+                // Extend the run over every change that follows within MAX_GAP cells
+                int end = col + 1;
+                for (int next = nextChange(current, old, end);
+                     next < current.length && next - end <= MAX_GAP; next = nextChange(current, old, end)) {
+                    end = next + 1;
+                }
+                moveCursor(writer, row, col);
+                for (int i = col; i < end; i++) {
+                    if (i > col && spaced) {
+                        writer.writeChar(SPACE);
+                    }
+                    writer.writeChar(current[i]);
+                    changed += current[i] != old[i] ? 1 : 0;
+                }
+                col = nextChange(current, old, end);
+            }
+        }
+        return changed;
+    }
+
+    private static int nextChange(char[] current, char[] old, int from) {
+        int col = from;
+        while (col < current.length && current[col] == old[col]) {
+            col++;
+        }
+        return col;
+    }
+
+    /**
+     * Moves the cursor to a cell, relative to the row it is on, each cell taking two columns
+     * when spaced: its char and a space.
+     */
+    private void moveCursor(RowWriter writer, int row, int col) throws IOException {
+        if (row != cursorRow) {
+            writeEscape(writer, Math.abs(row - cursorRow), row < cursorRow ? 'A' : 'B');
+            cursorRow = row;
+        }
+        writeEscape(writer, (spaced ? 2 : 1) * col + 1, 'G');
+    }
+
+    private static void writeEscape(RowWriter writer, int number, char command) throws IOException {
+        writer.writeChar('\033');
+        writer.writeChar('[');
+        writeNumber(writer, number);
+        writer.writeChar(command);
+    }
+
+    private static void writeNumber(RowWriter writer, int number) throws IOException {
+        if (number >= 10) {
+            writeNumber(writer, number / 10);
+        }
+        writer.writeChar((char) ('0' + number % 10));
+    }
+
+    private void remember(char[][] chars) {
+        if (previous == null || previous.length != chars.length || previous[0].length != chars[0].length) {
+            previous = new char[chars.length][chars[0].length];
+        }
+        for (int row = 0; row < chars.length; row++) {
+            System.arraycopy(chars[row], 0, previous[row], 0, chars[row].length);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ascii_output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Expands archived renders back to the 2D arrays of chars they were written from.
+ */
+public final class AsciiReader {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final String PARAGRAPH_START = "<p style=";
+    private static final String PARAGRAPH_END = "</p>";
+
+    private AsciiReader() {
+    }
+
+    /**
+     * Reads a file written by BinaryAsciiOutput.
+     *
+     * @throws IOException if the file cannot be read or is not in the binary format
+     */
+    public static char[][] readBinary(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(Path.of(filename)), BUFFER_SIZE))) {
+            if (in.readInt() != BinaryAsciiOutput.MAGIC) {
+                throw new IOException("Not a binary ASCII file: " + filename);
+            }
+            boolean runLengthEncoded = (in.readByte() & BinaryAsciiOutput.RUN_LENGTH_FLAG) != 0;
+            int rows = in.readInt(), cols = in.readInt(), paletteSize = in.readInt();
+            if (rows < 0 || cols < 0 || paletteSize < 0 || paletteSize > Character.MAX_VALUE + 1) {
+                throw new IOException("Malformed header in " + filename);
+            }
+            char[] palette = new char[paletteSize];
+            for (int i = 0; i < paletteSize; i++) {
+                palette[i] = in.readChar();
+            }
+
+            int bitsPerIndex = BinaryAsciiOutput.bitsFor(paletteSize);
+            BitReader reader = new BitReader(in);
+            char[][] chars = new char[rows][cols];
+            int run = 0;
+            char runChar = 0;
+            for (char[] row : chars) {
+                for (int col = 0; col < cols; col++) {
+                    if (!runLengthEncoded) {
+                        row[col] = palette[checkIndex(reader.read(bitsPerIndex), paletteSize)];
+                        continue;
+                    }
+                    if (run == 0) {
+                        runChar = palette[checkIndex(reader.read(bitsPerIndex), paletteSize)];
+                        run = reader.readGamma();
+                    }
+                    row[col] = runChar;
+                    run--;
+                }
+            }
+            return chars;
+        }
+    }
+
+    /**
+     * Reads a file written by GzipHtmlAsciiOutput. A grid which holds line breaks cannot
+     * be told apart from one with more rows, so renders using them should be archived with
+     * BinaryAsciiOutput instead.
+     *
+     * @throws IOException if the file cannot be read or is not a compressed page of chars
+     */
+    public static char[][] readGzipHtml(String filename) throws IOException {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(Path.of(filename)), BUFFER_SIZE);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            do {
+                line = reader.readLine();
+            } while (line != null && !line.startsWith(PARAGRAPH_START));
+            if (line == null) {
+                throw new IOException("No chars found in " + filename);
+            }
+
+            List<char[]> rows = new ArrayList<>();
+            while ((line = reader.readLine()) != null && !line.equals(PARAGRAPH_END)) {
+                rows.add(unescape(line));
+            }
+            if (line == null) {
+                throw new IOException("The chars in " + filename + " end early");
+            }
+            return rows.toArray(new char[0][]);
+        }
+    }
+
+    private static int checkIndex(int index, int paletteSize) throws IOException {
+        if (index >= paletteSize) {
+            throw new IOException("A cell is outside the palette");
+        }
+        return index;
+    }
+
+    /**
+     * Reverses the escapes HtmlAsciiOutput writes.
+     */
+    private static char[] unescape(String line) {
+        return line.replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&").toCharArray();
+    }
+}
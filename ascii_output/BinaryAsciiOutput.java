@@ -0,0 +1,123 @@
+package ascii_output;
+
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to a compact binary file, for archiving renders.
+ * AsciiReader.readBinary expands the file back to the chars.
+ * <p>
+ * The file starts with a header: the magic bytes "ASC1", a byte of flags, the number of
+ * rows and columns, and the palette, the distinct chars of the grid in ascending order.
+ * Then every cell, row after row, is packed as its index in the palette in as few bits
+ * as the palette needs. With run-length encoding, cells are instead packed as runs of
+ * equal cells, each an index followed by the length of the run in Elias gamma code, and
+ * runs continue across rows.
+ */
+public class BinaryAsciiOutput implements AsciiOutput {
+    static final int MAGIC = 0x41534331;
+    static final int RUN_LENGTH_FLAG = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String filename;
+    private final boolean runLengthEncoded;
+
+    /**
+     * @param runLengthEncoded whether to pack runs of equal cells rather than every cell,
+     *                         which is smaller for images with large flat areas
+     */
+    public BinaryAsciiOutput(String filename, boolean runLengthEncoded) {
+        this.filename = filename;
+        this.runLengthEncoded = runLengthEncoded;
+    }
+
+    @Override
+    public void output(char[][] chars) {
+        try {
+            write(chars);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Like output, but throws when the file cannot be written instead of logging it.
+     */
+    public void write(char[][] chars) throws IOException {
+        Metrics.Span span = Metrics.start(Stage.OUTPUT);
+        char[] palette = getPalette(chars);
+        int bitsPerIndex = bitsFor(palette.length);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(Path.of(filename)), BUFFER_SIZE))) {
+            out.writeInt(MAGIC);
+            out.writeByte(runLengthEncoded ? RUN_LENGTH_FLAG : 0);
+            out.writeInt(chars.length);
+            out.writeInt(chars.length == 0 ? 0 : chars[0].length);
+            out.writeInt(palette.length);
+            for (char c : palette) {
+                out.writeChar(c);
+            }
+
+            BitWriter writer = new BitWriter(out);
+            int run = 0, runIndex = -1;
+            for (char[] row : chars) {
+                for (char c : row) {
+                    int index = Arrays.binarySearch(palette, c);
+                    if (!runLengthEncoded) {
+                        writer.write(index, bitsPerIndex);
+                    } else if (index == runIndex) {
+                        run++;
+                    } else {
+                        if (run > 0) {
+                            writer.write(runIndex, bitsPerIndex);
+                            writer.writeGamma(run);
+                        }
+                        runIndex = index;
+                        run = 1;
+                    }
+                }
+            }
+            if (run > 0) {
+                writer.write(runIndex, bitsPerIndex);
+                writer.writeGamma(run);
+            }
+            writer.flush();
+            span.end(0, (long) chars.length * (chars.length == 0 ? 0 : chars[0].length), out.size());
+        }
+    }
+
+    /**
+     * Returns the number of bits an index into a palette of the given size takes.
+     */
+    static int bitsFor(int paletteSize) {
+        return paletteSize <= 1 ? 0 : Integer.SIZE - Integer.numberOfLeadingZeros(paletteSize - 1);
+    }
+
+    private static char[] getPalette(char[][] chars) {
+        boolean[] used = new boolean[Character.MAX_VALUE + 1];
+        int numUsed = 0;
+        for (char[] row : chars) {
+            for (char c : row) {
+                if (!used[c]) {
+                    used[c] = true;
+                    numUsed++;
+                }
+            }
+        }
+        char[] palette = new char[numUsed];
+        for (int c = 0, i = 0; i < numUsed; c++) {
+            if (used[c]) {
+                palette[i++] = (char) c;
+            }
+        }
+        return palette;
+    }
+}
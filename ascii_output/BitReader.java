@@ -0,0 +1,49 @@
+package ascii_output;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A package-private class of the package ascii_output.
+ * Reads back what a BitWriter wrote.
+ */
+class BitReader {
+    private final InputStream in;
+    private long bits = 0;
+    private int numBits = 0;
+
+    BitReader(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads an unsigned value of width bits, up to 32.
+     */
+    int read(int width) throws IOException {
+        while (numBits < width) {
+            int next = in.read();
+            if (next < 0) {
+                throw new EOFException("The packed cells end early");
+            }
+            bits = (bits << Byte.SIZE) | next;
+            numBits += Byte.SIZE;
+        }
+        numBits -= width;
+        return (int) ((bits >>> numBits) & ((1L << width) - 1));
+    }
+
+    /**
+     * Reads a number written by BitWriter.writeGamma.
+     */
+    int readGamma() throws IOException {
+        int zeros = 0;
+        while (read(1) == 0) {
+            zeros++;
+            if (zeros >= Integer.SIZE) {
+                throw new IOException("Malformed run length");
+            }
+        }
+        return zeros == 0 ? 1 : (1 << zeros) | read(zeros);
+    }
+}
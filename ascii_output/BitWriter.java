@@ -0,0 +1,51 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A package-private class of the package ascii_output.
+ * Packs values of any width up to 32 bits into bytes, most significant bit first.
+ */
+class BitWriter {
+    private final OutputStream out;
+    private long bits = 0;
+    private int numBits = 0;
+
+    BitWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the lowest width bits of value.
+     */
+    void write(int value, int width) throws IOException {
+        bits = (bits << width) | (value & ((1L << width) - 1));
+        numBits += width;
+        while (numBits >= Byte.SIZE) {
+            numBits -= Byte.SIZE;
+            out.write((int) (bits >>> numBits));
+        }
+    }
+
+    /**
+     * Writes a positive number in Elias gamma code: as many zeros as it has bits after the
+     * first, then its bits. Small numbers take few bits, and there is no largest one.
+     */
+    void writeGamma(int value) throws IOException {
+        int width = Integer.SIZE - Integer.numberOfLeadingZeros(value);
+        write(0, width - 1);
+        write(value, width);
+    }
+
+    /**
+     * Writes the bits not yet written, padding the last byte with zeros.
+     */
+    void flush() throws IOException {
+        if (numBits > 0) {
+            out.write((int) (bits << (Byte.SIZE - numBits)));
+            numBits = 0;
+        }
+        out.flush();
+    }
+}
@@ -0,0 +1,99 @@
+package ascii_output;
+
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Output a 2D array of chars to an HTML file, drawing every char in the color of the part
+ * of the image it stands for. Colors are quantized to 4 bits per channel, and a run of
+ * chars of the same quantized color shares a single span, even across line breaks.
+ * Spaces never break a run, since their color cannot be seen.
+ */
+public class ColoredHtmlAsciiOutput implements AsciiOutput {
+    private static final int NUM_QUANTIZED_COLORS = 1 << 12;
+    private static final byte[] SPAN_END = "</span>".getBytes(StandardCharsets.US_ASCII);
+
+    private final String fontName;
+    private final String filename;
+    private final int[][] colors;
+    // The opening tag of every quantized color, made when first used
+    private final byte[][] spanStarts = new byte[NUM_QUANTIZED_COLORS][];
+
+    /**
+     * @param colors the color of every char as an RGB int, in the same layout as the chars
+     */
+    public ColoredHtmlAsciiOutput(String filename, String fontName, int[][] colors) {
+        this.fontName = fontName;
+        this.filename = filename;
+        this.colors = colors;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the colors are not laid out like the chars
+     */
+    @Override
+    public void output(char[][] chars) {
+        if (colors.length != chars.length || (chars.length > 0 && colors[0].length != chars[0].length)) {
+            throw new IllegalArgumentException(String.format("Cannot color %dx%d chars with %dx%d colors",
+                    chars.length == 0 ? 0 : chars[0].length, chars.length,
+                    colors.length == 0 ? 0 : colors[0].length, colors.length));
+        }
+        Metrics.Span span = Metrics.start(Stage.OUTPUT);
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            RowWriter writer = new RowWriter(channel, RowWriter.HTML_ESCAPES);
+            writer.write(HtmlAsciiOutput.header(fontName, chars[0].length));
+
+            int currentColor = -1;
+            for (int row = 0; row < chars.length; row++) {
+                for (int col = 0; col < chars[row].length; col++) {
+                    char c = chars[row][col];
+                    int color = quantize(colors[row][col]);
+                    if (color != currentColor && c != ' ') {
+                        if (currentColor >= 0) {
+                            writer.writeBytes(SPAN_END);
+                        }
+                        writer.writeBytes(getSpanStart(color));
+                        currentColor = color;
+                    }
+                    writer.writeChar(c);
+                }
+                writer.writeNewLine();
+            }
+            if (currentColor >= 0) {
+                writer.writeBytes(SPAN_END);
+            }
+            writer.write(HtmlAsciiOutput.FOOTER);
+            span.end(0, (long) chars.length * chars[0].length, writer.getBytesWritten());
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Rounds every channel of an RGB int to 4 bits, packed as 0xRGB.
+     */
+    private static int quantize(int rgb) {
+        int red = (rgb >> 16) & 0xFF, green = (rgb >> 8) & 0xFF, blue = rgb & 0xFF;
+        return (toNibble(red) << 8) | (toNibble(green) << 4) | toNibble(blue);
+    }
+
+    private static int toNibble(int channel) {
+        return (channel * 15 + 127) / 255;
+    }
+
+    private byte[] getSpanStart(int color) {
+        if (spanStarts[color] == null) {
+            spanStarts[color] = String.format("<span style=\"color:#%03x\">", color)
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+        return spanStarts[color];
+    }
+}
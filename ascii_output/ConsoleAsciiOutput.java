@@ -1,18 +1,58 @@
 package ascii_output;
 
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.logging.Logger;
+
 /**
  * Output a 2D array of chars to the console.
+ * The whole grid is encoded into a reused buffer and written in as few writes as possible.
  *
  * @author Dan Nirel
  */
 public class ConsoleAsciiOutput implements AsciiOutput {
+    private final PrintStream out;
+    private final boolean spaced;
+
+    public ConsoleAsciiOutput() {
+        this(System.out);
+    }
+
+    /**
+     * @param out where to write the chars instead of the console. It is flushed, not closed.
+     */
+    public ConsoleAsciiOutput(OutputStream out) {
+        this(out, true);
+    }
+
+    /**
+     * @param spaced whether to follow every char with a space, as the other constructors do
+     */
+    public ConsoleAsciiOutput(OutputStream out, boolean spaced) {
+        this.out = out instanceof PrintStream printStream ? printStream : new PrintStream(out);
+        this.spaced = spaced;
+    }
+
     @Override
     public void output(char[][] chars) {
-        for (int y = 0; y < chars.length; y++) {
-            for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+        Metrics.Span span = Metrics.start(Stage.OUTPUT);
+        WritableByteChannel channel = Channels.newChannel(out);
+        RowWriter writer = new RowWriter(channel, null);
+        try {
+            for (char[] row : chars) {
+                writer.writeRow(row, spaced);
             }
-            System.out.println();
+            writer.flush();
+            span.end(0, (long) chars.length * chars[0].length, writer.getBytesWritten());
+        } catch (IOException e) {
+            Logger.getGlobal().severe("Failed to write to the console");
         }
+        out.flush();
     }
 }
@@ -0,0 +1,43 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Output a 2D array of chars to a gzip-compressed HTML file, the page HtmlAsciiOutput
+ * writes compressed as it is written. Browsers open it directly when served with
+ * Content-Encoding: gzip, and AsciiReader.readGzipHtml expands it back to the chars.
+ */
+public class GzipHtmlAsciiOutput implements AsciiOutput {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String filename;
+    private final String fontName;
+
+    public GzipHtmlAsciiOutput(String filename, String fontName) {
+        this.filename = filename;
+        this.fontName = fontName;
+    }
+
+    @Override
+    public void output(char[][] chars) {
+        try {
+            write(chars);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Like output, but throws when the file cannot be written instead of logging it.
+     */
+    public void write(char[][] chars) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(Path.of(filename)), BUFFER_SIZE)) {
+            new HtmlAsciiOutput(out, fontName).write(chars);
+        }
+    }
+}
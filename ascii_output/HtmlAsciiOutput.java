@@ -1,12 +1,20 @@
 package ascii_output;
 
-import java.io.BufferedWriter;
-import java.io.FileWriter;
+import metrics.Metrics;
+import metrics.Stage;
+
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Logger;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * The file is encoded as UTF-8 and written row by row through a single reused buffer.
  *
  * @author Dan Nirel
  */
@@ -14,58 +22,85 @@ public class HtmlAsciiOutput implements AsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
 
+    static final String FOOTER =
+            "</p>\n" +
+                    "</body>\n" +
+                    "</html>\n";
+
     private final String fontName;
     private final String filename;
+    private final OutputStream out;
 
     public HtmlAsciiOutput(String filename, String fontName) {
         this.fontName = fontName;
         this.filename = filename;
+        this.out = null;
+    }
+
+    /**
+     * @param out where to write the page instead of a file. It is flushed, not closed.
+     */
+    public HtmlAsciiOutput(OutputStream out, String fontName) {
+        this.fontName = fontName;
+        this.filename = null;
+        this.out = out;
     }
 
     @Override
     public void output(char[][] chars) {
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                    "<!DOCTYPE html>\n" +
-                            "<html>\n" +
-                            "<body style=\"" +
-                            "\tCOLOR:#000000;" +
-                            "\tTEXT-ALIGN:center;" +
-                            "\tFONT-SIZE:1px;\">\n" +
-                            "<p style=\"" +
-                            "\twhite-space:pre;" +
-                            "\tFONT-FAMILY:%s;" +
-                            "\tFONT-SIZE:%frem;" +
-                            "\tLETTER-SPACING:0.15em;" +
-                            "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE / chars[0].length, BASE_LINE_SPACING));
-
-            for (int y = 0; y < chars.length; y++) {
-                for (int x = 0; x < chars[y].length; x++) {
-                    String htmlRep;
-                    switch (chars[y][x]) {
-                        case '<':
-                            htmlRep = "&lt;";
-                            break;
-                        case '>':
-                            htmlRep = "&gt;";
-                            break;
-                        case '&':
-                            htmlRep = "&amp;";
-                            break;
-                        default:
-                            htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
-                }
-                writer.newLine();
-            }
-            writer.write(
-                    "</p>\n" +
-                            "</body>\n" +
-                            "</html>\n");
+        try {
+            write(chars);
         } catch (IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            Logger.getGlobal().severe(out != null ? "Failed to write to the stream" :
+                    String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Like output, but throws when the page cannot be written instead of logging it.
+     */
+    public void write(char[][] chars) throws IOException {
+        if (out != null) {
+            write(Channels.newChannel(out), chars);
+            out.flush();
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(Path.of(filename), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(channel, chars);
+        }
+    }
+
+    private void write(WritableByteChannel channel, char[][] chars) throws IOException {
+        Metrics.Span span = Metrics.start(Stage.OUTPUT);
+        RowWriter writer = new RowWriter(channel, RowWriter.HTML_ESCAPES);
+        writer.write(header(fontName, chars[0].length));
+
+        for (char[] row : chars) {
+            writer.writeRow(row, false);
         }
+        writer.write(FOOTER);
+        span.end(0, (long) chars.length * chars[0].length, writer.getBytesWritten());
+    }
+
+    /**
+     * Returns the start of the page, up to the paragraph holding the characters.
+     */
+    static String header(String fontName, int numCharsInRow) {
+        return String.format(
+                "<!DOCTYPE html>\n" +
+                        "<html>\n" +
+                        "<head><meta charset=\"UTF-8\"></head>\n" +
+                        "<body style=\"" +
+                        "\tCOLOR:#000000;" +
+                        "\tTEXT-ALIGN:center;" +
+                        "\tFONT-SIZE:1px;\">\n" +
+                        "<p style=\"" +
+                        "\twhite-space:pre;" +
+                        "\tFONT-FAMILY:%s;" +
+                        "\tFONT-SIZE:%frem;" +
+                        "\tLETTER-SPACING:0.15em;" +
+                        "\tLINE-HEIGHT:%fem;\">\n",
+                fontName, BASE_FONT_SIZE / numCharsInRow, BASE_LINE_SPACING);
     }
 }
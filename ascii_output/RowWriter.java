@@ -0,0 +1,156 @@
+package ascii_output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A package-private class of the package ascii_output.
+ * Encodes rows of chars as UTF-8 into a single reused buffer, replacing characters through
+ * a precomputed escape table, and writes the buffer to a channel whenever it fills up.
+ * No objects are allocated per character.
+ */
+class RowWriter {
+    /**
+     * Escapes for the characters HTML treats specially, indexed by character.
+     */
+    static final byte[][] HTML_ESCAPES = new byte[128][];
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Room for the longest escape or UTF-8 sequence, followed by a space
+    private static final int MAX_BYTES_PER_CHAR = 8;
+    private static final byte SPACE = ' ';
+    private static final byte NEW_LINE = '\n';
+
+    static {
+        HTML_ESCAPES['<'] = "&lt;".getBytes(StandardCharsets.US_ASCII);
+        HTML_ESCAPES['>'] = "&gt;".getBytes(StandardCharsets.US_ASCII);
+        HTML_ESCAPES['&'] = "&amp;".getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private final WritableByteChannel channel;
+    private final byte[][] escapes;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int position = 0;
+    private long bytesWritten = 0;
+
+    /**
+     * @param escapes the bytes to write instead of each ASCII character, or null where the
+     *                character is written as is. May be null to escape nothing.
+     */
+    RowWriter(WritableByteChannel channel, byte[][] escapes) {
+        this.channel = channel;
+        this.escapes = escapes;
+    }
+
+    /**
+     * Writes a string as is, without escaping it.
+     */
+    void write(String s) throws IOException {
+        flush();
+        ByteBuffer bytes = ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            bytesWritten += channel.write(bytes);
+        }
+    }
+
+    /**
+     * Writes a row of characters followed by a line break.
+     *
+     * @param spaced whether to follow every character with a space
+     */
+    void writeRow(char[] row, boolean spaced) throws IOException {
+        for (char c : row) {
+            if (position + MAX_BYTES_PER_CHAR > buffer.length) {
+                flush();
+            }
+            encode(c);
+            if (spaced) {
+                buffer[position++] = SPACE;
+            }
+        }
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = NEW_LINE;
+    }
+
+    /**
+     * Writes a single character.
+     */
+    void writeChar(char c) throws IOException {
+        if (position + MAX_BYTES_PER_CHAR > buffer.length) {
+            flush();
+        }
+        encode(c);
+    }
+
+    /**
+     * Writes bytes as they are, without escaping them.
+     */
+    void writeBytes(byte[] bytes) throws IOException {
+        if (position + bytes.length > buffer.length) {
+            flush();
+        }
+        if (bytes.length > buffer.length) {
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                bytesWritten += channel.write(large);
+            }
+            return;
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Writes a line break.
+     */
+    void writeNewLine() throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = NEW_LINE;
+    }
+
+    /**
+     * Writes everything buffered so far to the channel.
+     */
+    void flush() throws IOException {
+        byteBuffer.clear().limit(position);
+        while (byteBuffer.hasRemaining()) {
+            bytesWritten += channel.write(byteBuffer);
+        }
+        position = 0;
+    }
+
+    /**
+     * Returns the number of bytes written to the channel so far.
+     */
+    long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private void encode(char c) {
+        if (c < 0x80) {
+            byte[] escape = escapes == null ? null : escapes[c];
+            if (escape == null) {
+                buffer[position++] = (byte) c;
+            } else {
+                System.arraycopy(escape, 0, buffer, position, escape.length);
+                position += escape.length;
+            }
+        } else if (c < 0x800) {
+            buffer[position++] = (byte) (0xC0 | (c >> 6));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isSurrogate(c)) {
+            // A lone half of a surrogate pair cannot be encoded
+            buffer[position++] = '?';
+        } else {
+            buffer[position++] = (byte) (0xE0 | (c >> 12));
+            buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[position++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import ascii_output.HtmlAsciiOutput;
+import image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing rendered grids to HTML files.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HtmlOutputBenchmark {
+    @Param({"2048"})
+    private int size;
+
+    @Param({"256", "1024"})
+    private int charsInRow;
+
+    private Path file;
+    private HtmlAsciiOutput output;
+    private char[][] chars;
+
+    @Setup
+    public void createInputs() throws IOException {
+        Image img = Image.fromBufferedImage(SyntheticImages.create(size));
+        chars = new BrightnessImgCharMatcher(img, "Courier New").chooseChars(charsInRow, SyntheticImages.asciiChars());
+        file = Files.createTempFile("benchmark", ".html");
+        output = new HtmlAsciiOutput(file.toString(), "Courier New");
+    }
+
+    @TearDown
+    public void deleteOutput() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void output() {
+        output.output(chars);
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import image.Image;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading images from disk and dividing them into sub-images.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageBenchmark {
+    @Param({"512", "2048"})
+    private int size;
+
+    @Param({"64", "256"})
+    private int charsInRow;
+
+    private Path file;
+    private BufferedImage decoded;
+    private Image img;
+
+    @Setup(Level.Trial)
+    public void createInputs() throws IOException {
+        file = SyntheticImages.createFile(size);
+        decoded = SyntheticImages.create(size);
+    }
+
+    // getRepixelatedImage caches its result, so every invocation gets an image of its own
+    @Setup(Level.Invocation)
+    public void createImage() {
+        img = Image.fromBufferedImage(decoded);
+    }
+
+    @Benchmark
+    public Image fromFile() {
+        return Image.fromFile(file.toString());
+    }
+
+    @Benchmark
+    public Image[][] getRepixelatedImage() {
+        return img.getRepixelatedImage(size / charsInRow);
+    }
+}
@@ -0,0 +1,67 @@
+package benchmarks;
+
+import image.LuminanceKernel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The luminance kernels over rows of random pixels, scalar against the Vector API.
+ * Setup fails when the two kernels disagree on any pixel.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class LuminanceBenchmark {
+    @Param({"1024", "1048576"})
+    private int pixels;
+
+    @Param({"scalar", "best"})
+    private String kernelName;
+
+    private int[] argb;
+    private int[] luminance;
+    private LuminanceKernel kernel;
+
+    @Setup(Level.Trial)
+    public void createInputs() {
+        argb = new Random(pixels).ints(pixels).toArray();
+        luminance = new int[pixels];
+        kernel = kernelName.equals("scalar") ? LuminanceKernel.scalar() : LuminanceKernel.get();
+
+        int[] expected = new int[pixels];
+        LuminanceKernel.scalar().luminance(argb, 0, pixels, expected, 0);
+        kernel.luminance(argb, 0, pixels, luminance, 0);
+        if (!Arrays.equals(expected, luminance) ||
+                kernel.sum(argb, 0, pixels) != LuminanceKernel.scalar().sum(argb, 0, pixels)) {
+            throw new IllegalStateException("The " + kernel.getName() + " kernel differs from the scalar one");
+        }
+    }
+
+    @Benchmark
+    public int[] luminance() {
+        kernel.luminance(argb, 0, pixels, luminance, 0);
+        return luminance;
+    }
+
+    @Benchmark
+    public long sum() {
+        return kernel.sum(argb, 0, pixels);
+    }
+}
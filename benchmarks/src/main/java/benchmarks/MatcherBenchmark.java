@@ -0,0 +1,58 @@
+package benchmarks;
+
+import ascii_art.img_to_char.BrightnessImgCharMatcher;
+import image.Image;
+import image.IntegralImage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measuring tile brightness and matching tiles to characters.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatcherBenchmark {
+    @Param({"512", "2048"})
+    private int size;
+
+    @Param({"64", "256"})
+    private int charsInRow;
+
+    private Image img;
+    private BrightnessImgCharMatcher matcher;
+    private char[] chars;
+
+    @Setup
+    public void createInputs() {
+        img = Image.fromBufferedImage(SyntheticImages.create(size));
+        matcher = new BrightnessImgCharMatcher(img, "Courier New");
+        chars = SyntheticImages.asciiChars();
+        // Render the glyphs and build the integral image outside of the measurement
+        matcher.chooseChars(charsInRow, chars);
+    }
+
+    @Benchmark
+    public IntegralImage buildIntegralImage() {
+        return new IntegralImage(img);
+    }
+
+    @Benchmark
+    public char[][] chooseChars() {
+        return matcher.chooseChars(charsInRow, chars);
+    }
+}
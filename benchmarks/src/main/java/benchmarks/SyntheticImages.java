@@ -0,0 +1,52 @@
+package benchmarks;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generates benchmark inputs, so that no images need to be checked in.
+ */
+final class SyntheticImages {
+    private SyntheticImages() {
+    }
+
+    /**
+     * A square image of gradients and a disc, with enough structure to exercise every
+     * character of a palette.
+     */
+    static BufferedImage create(int size) {
+        BufferedImage im = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+        double radius = size / 3.0;
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                double dx = x - size / 2.0, dy = y - size / 2.0;
+                int red = 255 * x / size;
+                int green = 255 * y / size;
+                int blue = dx * dx + dy * dy < radius * radius ? 230 : 20;
+                im.setRGB(x, y, (red << 16) | (green << 8) | blue);
+            }
+        }
+        return im;
+    }
+
+    /**
+     * Writes the image of the given size to a temporary PNG file, deleted on exit.
+     */
+    static Path createFile(int size) throws IOException {
+        Path file = Files.createTempFile("benchmark", ".png");
+        file.toFile().deleteOnExit();
+        ImageIO.write(create(size), "png", file.toFile());
+        return file;
+    }
+
+    static char[] asciiChars() {
+        char[] chars = new char[128];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) i;
+        }
+        return chars;
+    }
+}
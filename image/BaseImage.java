@@ -3,29 +3,57 @@ package image;
 import java.awt.*;
 
 public class BaseImage implements Image {
-    private final Color[][] pixelArray;
+    private final int[] argb;
+    private final int width;
+    private final int height;
 
     public BaseImage(Color[][] pixelArray) {
-        this.pixelArray = pixelArray;
+        height = pixelArray.length;
+        width = pixelArray[0].length;
+        argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                argb[y * width + x] = pixelArray[y][x].getRGB();
+            }
+        }
+    }
+
+    /**
+     * Wraps pixels packed as ARGB ints, row after row. The array is not copied.
+     */
+    public BaseImage(int[] argb, int width, int height) {
+        this.argb = argb;
+        this.width = width;
+        this.height = height;
     }
 
     @Override
     public int getWidth() {
-        return pixelArray[0].length;
+        return width;
     }
 
     @Override
     public int getHeight() {
-        return pixelArray.length;
+        return height;
     }
 
     @Override
     public Image[][] getRepixelatedImage(int pixelSize) {
-        return new Image[0][];
+        return ImageView.repixelate(this, pixelSize);
     }
 
     @Override
     public Color getPixel(int x, int y) {
-        return pixelArray[y][x];
+        return new Color(getArgb(x, y), true);
+    }
+
+    @Override
+    public int getArgb(int x, int y) {
+        return argb[y * width + x];
+    }
+
+    @Override
+    public void getArgbRow(int x, int y, int length, int[] dst, int dstOffset) {
+        System.arraycopy(argb, y * width + x, dst, dstOffset, length);
     }
 }
@@ -1,112 +1,142 @@
 package image;
 
+import metrics.Metrics;
+import metrics.Stage;
+
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.Iterator;
 
 /**
  * A package-private class of the package image.
+ * Pixels are kept packed as ARGB ints, row after row, in a single array.
  *
  * @author Dan Nirel
  */
 public class FileImage implements Image {
-    private static final Color DEFAULT_COLOR = Color.WHITE;
-
-    private final Color[][] pixelArray;
-    private BaseImage[][] repixelatedImage;
+    private final int[] argb;
+    private final int width;
+    private final int height;
+    private IntegralImage integralImage;
+    private Image[][] repixelatedImage;
     private int pixelSize = 0;
 
     public FileImage(String filename) throws IOException {
-        java.awt.image.BufferedImage im = ImageIO.read(new File(filename));
-        int origWidth = im.getWidth(), origHeight = im.getHeight();
-
-        int newWidth = getNewSize(origWidth);
-        int newHeight = getNewSize(origHeight);
-
-        pixelArray = new Color[newHeight][newWidth];
-
-        fitImage(im, pixelArray);
-
-        repixelatedImage = null;
+        this(filename, 0);
     }
 
-    private int getNewSize(int origSize) {
-        int newSize = 1;
-
-        while (newSize < origSize) {
-            newSize <<= 1;//newSize = newSize * 2;
-        }
-
-        return newSize;
+    /**
+     * Opens an image, decoding only as much detail as needed for the given width.
+     * The file is subsampled while it is decoded, by the largest whole factor which keeps
+     * the image at least minWidth pixels wide, so the full-size image is never held in memory.
+     *
+     * @param minWidth the smallest width the image is needed in, or 0 for full detail
+     */
+    public FileImage(String filename, int minWidth) throws IOException {
+        this(read(new File(filename), minWidth));
     }
 
-    private void fitImage(java.awt.image.BufferedImage im, Color[][] pixelArray) {
-        int imWidth = im.getWidth(), imHeight = im.getHeight();
-        int arrayWidth = pixelArray.length, arrayHeight = pixelArray[0].length;
+    /**
+     * Copies the pixels of an image already in memory, such as a frame of an animation.
+     */
+    public FileImage(java.awt.image.BufferedImage im) {
+        Metrics.Span span = Metrics.start(Stage.FIT);
+        width = im.getWidth();
+        height = im.getHeight();
+        argb = im.getRGB(0, 0, width, height, null, 0, width);
+        span.end((long) width * height, 0, 0);
 
-        int paddingWidth = (arrayWidth - imWidth) / 2;
-        int paddingHeight = (arrayHeight - imHeight) / 2;
+        repixelatedImage = null;
+    }
 
-        for (int y = 0; y < imHeight; y++) {
-            for (int x = 0; x < imWidth; x++) {
-                int rgb = im.getRGB(x, y);
-                pixelArray[y + paddingHeight][x + paddingWidth] = new Color(rgb, true);
+    private static java.awt.image.BufferedImage read(File file, int minWidth) throws IOException {
+        try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+            if (stream == null) {
+                throw new IOException("Cannot open " + file);
             }
-        }
-
-        // Fill the remaining space with white pixels
-        for (int y = 0; y < arrayHeight; y++) {
-            for (int x = 0; x < arrayWidth; x++) {
-                if (y < paddingHeight || y >= paddingHeight + imHeight ||
-                        x < paddingWidth || x >= paddingWidth + imWidth) {
-                    pixelArray[y][x] = DEFAULT_COLOR;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format: " + file);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(stream, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (minWidth > 0) {
+                    int subsampling = Math.max(1, reader.getWidth(0) / minWidth);
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
                 }
+                Metrics.Span span = Metrics.start(Stage.DECODE);
+                java.awt.image.BufferedImage im = reader.read(0, param);
+                span.end((long) im.getWidth() * im.getHeight(), 0, 0);
+                return im;
+            } finally {
+                reader.dispose();
             }
         }
     }
 
     @Override
     public int getWidth() {
-        return pixelArray[0].length;
+        return width;
     }
 
     @Override
     public int getHeight() {
-        return pixelArray.length;
+        return height;
     }
 
     @Override
     public Color getPixel(int x, int y) {
-        return pixelArray[y][x];
+        return new Color(getArgb(x, y), true);
     }
 
+    @Override
+    public int getArgb(int x, int y) {
+        return argb[y * width + x];
+    }
+
+    @Override
+    public void getArgbRow(int x, int y, int length, int[] dst, int dstOffset) {
+        System.arraycopy(argb, y * width + x, dst, dstOffset, length);
+    }
+
+    @Override
+    public synchronized IntegralImage getIntegralImage() {
+        if (integralImage == null) {
+            integralImage = new IntegralImage(this);
+        }
+        return integralImage;
+    }
+
+    /**
+     * Divides the image into squares of pixelSize pixels, as views reading through to this
+     * image's pixels. Callers which only need the bounds of the squares should use them
+     * directly, as BrightnessImgCharMatcher does, rather than ask for views.
+     */
     @Override
     public Image[][] getRepixelatedImage(int pixelSize) {
         if (repixelatedImage != null && this.pixelSize == pixelSize) {
             return repixelatedImage;
         }
-        int newWidth = getWidth() / pixelSize;
-        int newHeight = getHeight() / pixelSize;
-
-        repixelatedImage = new BaseImage[newHeight][newWidth];
+        Metrics.Span span = Metrics.start(Stage.REPIXELATE);
+        repixelatedImage = ImageView.repixelate(this, pixelSize);
         this.pixelSize = pixelSize;
-
-        for (int y = 0; y < newHeight; y++) {
-            for (int x = 0; x < newWidth; x++) {
-                Image subImage = getSubImage(x, y, pixelSize);
-                repixelatedImage[y][x] = (BaseImage) subImage;
-            }
-        }
+        span.end(0, (long) (width / pixelSize) * (height / pixelSize), 0);
 
         return repixelatedImage;
     }
 
+    /**
+     * Returns the square of size pixels at the given tile coordinates, as a view reading
+     * through to this image's pixels.
+     */
     public Image getSubImage(int x, int y, int size) {
-        Color[][] subImage = new Color[size][size];
-        for (int i = 0; i < size; i++) {
-            System.arraycopy(pixelArray[(y * pixelSize) + i], (x * pixelSize), subImage[i], 0, size);
-        }
-        return new BaseImage(subImage);
+        return new ImageView(this, x * size, y * size, size, size);
     }
 }
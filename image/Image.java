@@ -2,6 +2,8 @@ package image;
 
 import java.awt.*;
 import java.io.IOException;
+import java.util.stream.IntStream;
+import java.util.stream.StreamSupport;
 
 /**
  * Facade for the image module and an interface representing an image.
@@ -11,28 +13,78 @@ import java.io.IOException;
 public interface Image {
     Color getPixel(int x, int y);
 
+    /**
+     * Returns the color of a pixel packed as an ARGB int, without allocating a Color.
+     */
+    default int getArgb(int x, int y) {
+        return getPixel(x, y).getRGB();
+    }
+
+    /**
+     * Copies a horizontal span of packed ARGB pixels, starting at (x, y), into dst.
+     * This is the bulk accessor hot loops should use instead of getPixel.
+     *
+     * @param x         the column of the first pixel in the span
+     * @param y         the row of the span
+     * @param length    the number of pixels to copy
+     * @param dst       the array to copy into
+     * @param dstOffset the index in dst of the first copied pixel
+     */
+    default void getArgbRow(int x, int y, int length, int[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = getArgb(x + i, y);
+        }
+    }
+
     int getWidth();
 
     int getHeight();
 
     /**
-     * Open an image from file. Each dimensions of the returned image is guaranteed
-     * to be a power of 2, but the dimensions may be different.
+     * Open an image from file. The returned image has the dimensions of the file.
+     * When the system property "ascii_art.pixelCache" names a directory, decoded pixels
+     * are cached there and mapped from disk the next time the unchanged file is opened.
      *
      * @param filename a path to an image file on disk
      * @return an object implementing Image if the operation was successful,
      * null otherwise
      */
     static Image fromFile(String filename) {
+        return fromFile(filename, 0);
+    }
+
+    /**
+     * Open an image from file, decoding only the detail needed to view it at the given
+     * width. Huge files are subsampled while they are decoded, so memory use depends on
+     * minWidth rather than on the size of the file. Decoded pixels are cached like those
+     * of fromFile(filename).
+     *
+     * @param filename a path to an image file on disk
+     * @param minWidth the smallest width in pixels the image is needed in
+     * @return an object implementing Image if the operation was successful,
+     * null otherwise
+     */
+    static Image fromFile(String filename, int minWidth) {
         try {
-            return new FileImage(filename);
+            return PixelCache.isEnabled() ? PixelCache.load(filename, minWidth) : new FileImage(filename, minWidth);
         } catch (IOException ioe) {
             return null;
         }
     }
 
+    /**
+     * Copy an image already decoded into memory.
+     *
+     * @param im the decoded image
+     * @return an object implementing Image holding a copy of the pixels of im
+     */
+    static Image fromBufferedImage(java.awt.image.BufferedImage im) {
+        return new FileImage(im);
+    }
+
     /**
      * Allows iterating the pixels' colors by order (first row, second row and so on).
+     * Every pixel is a new Color; forEachRow and argbStream iterate without allocating.
      *
      * @return an Iterable<Color> that can be traversed with a foreach loop
      */
@@ -41,6 +93,36 @@ public interface Image {
                 this, this::getPixel);
     }
 
+    /**
+     * Visits the pixels row after row, each row as a span of packed ARGB ints, without
+     * allocating anything per pixel. The span is only valid during the call, as its array
+     * may be reused for the next row.
+     */
+    default void forEachRow(PixelRowVisitor visitor) {
+        int[] row = new int[getWidth()];
+        for (int y = 0; y < getHeight(); y++) {
+            getArgbRow(0, y, row.length, row, 0);
+            visitor.visitRow(y, row, 0, row.length);
+        }
+    }
+
+    /**
+     * Returns the pixels as packed ARGB ints, in the order of pixels(). The stream is
+     * sized and splits into bands of whole rows, so it runs well in parallel.
+     */
+    default IntStream argbStream() {
+        return StreamSupport.intStream(new PixelSpliterator(this), false);
+    }
+
+    /**
+     * Returns the summed-area table of this image's luminance, which gives the
+     * brightness of any rectangle of the image in constant time.
+     * Implementations may build it once and keep it for the lifetime of the image.
+     */
+    default IntegralImage getIntegralImage() {
+        return new IntegralImage(this);
+    }
+
     public Image[][] getRepixelatedImage(int pixelSize);
 //    public Image getSubImage(int x, int y, int size);
 }
@@ -0,0 +1,73 @@
+package image;
+
+import java.awt.*;
+
+/**
+ * A package-private class of the package image.
+ * A rectangle of another image, reading through to its pixels without copying them.
+ */
+class ImageView implements Image {
+    private final Image parent;
+    private final int left;
+    private final int top;
+    private final int width;
+    private final int height;
+
+    /**
+     * @param left the column of the parent at which the view starts
+     * @param top  the row of the parent at which the view starts
+     */
+    ImageView(Image parent, int left, int top, int width, int height) {
+        this.parent = parent;
+        this.left = left;
+        this.top = top;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Divides an image into as many whole squares of pixelSize pixels as fit, as views.
+     * Only the grid of views is allocated.
+     */
+    static Image[][] repixelate(Image img, int pixelSize) {
+        int newWidth = img.getWidth() / pixelSize;
+        int newHeight = img.getHeight() / pixelSize;
+        Image[][] views = new Image[newHeight][newWidth];
+        for (int y = 0; y < newHeight; y++) {
+            for (int x = 0; x < newWidth; x++) {
+                views[y][x] = new ImageView(img, x * pixelSize, y * pixelSize, pixelSize, pixelSize);
+            }
+        }
+        return views;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getArgb(x, y), true);
+    }
+
+    @Override
+    public int getArgb(int x, int y) {
+        return parent.getArgb(left + x, top + y);
+    }
+
+    @Override
+    public void getArgbRow(int x, int y, int length, int[] dst, int dstOffset) {
+        parent.getArgbRow(left + x, top + y, length, dst, dstOffset);
+    }
+
+    @Override
+    public Image[][] getRepixelatedImage(int pixelSize) {
+        return repixelate(this, pixelSize);
+    }
+}
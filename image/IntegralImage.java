@@ -0,0 +1,92 @@
+package image;
+
+import metrics.Metrics;
+import metrics.Stage;
+
+/**
+ * A summed-area table of an image's luminance. Once built, the total luminance of any
+ * axis-aligned rectangle of the image is found with four lookups, regardless of its size.
+ * <p>
+ * The table is kept in ints and relies on wrapping arithmetic: the difference of the four
+ * corners is exact modulo 2^32, which is exact for any rectangle of up to
+ * {@value #MAX_EXACT_AREA} pixels. Larger rectangles are summed in bands.
+ */
+public class IntegralImage {
+    /**
+     * The largest area whose luminance sum always fits in an unsigned int.
+     */
+    static final int MAX_EXACT_AREA = (int) (0xFFFFFFFFL / 255);
+
+    private final int width;
+    private final int height;
+    private final int[] sums;
+
+    /**
+     * Builds the table with a single pass over the pixels of img, converting every row to
+     * luminance through LuminanceKernel.get.
+     */
+    public IntegralImage(Image img) {
+        Metrics.Span span = Metrics.start(Stage.INTEGRAL);
+        width = img.getWidth();
+        height = img.getHeight();
+        int stride = width + 1;
+        sums = new int[stride * (height + 1)];
+
+        LuminanceKernel kernel = LuminanceKernel.get();
+        int[] row = new int[width];
+        int[] rowLuminance = new int[width];
+        for (int y = 0; y < height; y++) {
+            img.getArgbRow(0, y, width, row, 0);
+            kernel.luminance(row, 0, width, rowLuminance, 0);
+            int rowSum = 0;
+            int above = y * stride + 1, current = above + stride;
+            for (int x = 0; x < width; x++) {
+                rowSum += rowLuminance[x];
+                sums[current + x] = sums[above + x] + rowSum;
+            }
+        }
+        span.end((long) width * height, 0, 0);
+    }
+
+    /**
+     * Returns the luminance (0-255) of a pixel packed as an ARGB int.
+     */
+    public static int luminance(int argb) {
+        return LuminanceKernel.luminance(argb);
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the sum of the luminance of all pixels in a rectangle.
+     *
+     * @param x      the leftmost column of the rectangle
+     * @param y      the top row of the rectangle
+     * @param width  the width of the rectangle in pixels
+     * @param height the height of the rectangle in pixels
+     */
+    public long getSum(int x, int y, int width, int height) {
+        if ((long) width * height <= MAX_EXACT_AREA) {
+            return exactSum(x, y, width, height);
+        }
+        int bandHeight = Math.max(1, MAX_EXACT_AREA / width);
+        long sum = 0;
+        for (int band = y; band < y + height; band += bandHeight) {
+            sum += exactSum(x, band, width, Math.min(bandHeight, y + height - band));
+        }
+        return sum;
+    }
+
+    private long exactSum(int x, int y, int width, int height) {
+        int stride = this.width + 1;
+        int top = y * stride + x, bottom = (y + height) * stride + x;
+        int sum = sums[bottom + width] - sums[bottom] - sums[top + width] + sums[top];
+        return Integer.toUnsignedLong(sum);
+    }
+}
@@ -0,0 +1,74 @@
+package image;
+
+import java.util.logging.Logger;
+
+/**
+ * Computes the luminance of runs of ARGB pixels, the innermost loop of every render.
+ * Luminance is 0.2126R + 0.7152G + 0.0722B in 16-bit fixed point, rounded down, so every
+ * kernel gives exactly the same results.
+ * <p>
+ * get returns a kernel running on the JDK's Vector API when the jdk.incubator.vector module
+ * is loaded (java --add-modules jdk.incubator.vector) and the system property
+ * "ascii_art.vector" is not false, and a scalar kernel otherwise.
+ */
+public abstract class LuminanceKernel {
+    static final int RED_WEIGHT = 13933;
+    static final int GREEN_WEIGHT = 46871;
+    static final int BLUE_WEIGHT = 4732;
+    static final int WEIGHT_BITS = 16;
+
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    private static final String VECTOR_KERNEL = "image.VectorLuminanceKernel";
+    private static final LuminanceKernel SCALAR = new ScalarLuminanceKernel();
+    private static final LuminanceKernel BEST = loadBest();
+
+    /**
+     * Returns the fastest kernel available.
+     */
+    public static LuminanceKernel get() {
+        return BEST;
+    }
+
+    /**
+     * Returns the kernel handling one pixel at a time, available everywhere.
+     */
+    public static LuminanceKernel scalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Returns the luminance (0-255) of a pixel packed as an ARGB int.
+     */
+    public static int luminance(int argb) {
+        int red = (argb >> 16) & 0xFF, green = (argb >> 8) & 0xFF, blue = argb & 0xFF;
+        return (red * RED_WEIGHT + green * GREEN_WEIGHT + blue * BLUE_WEIGHT) >>> WEIGHT_BITS;
+    }
+
+    /**
+     * Writes the luminance of argb[offset, offset + length) to dst, starting at dstOffset.
+     */
+    public abstract void luminance(int[] argb, int offset, int length, int[] dst, int dstOffset);
+
+    /**
+     * Returns the sum of the luminance of argb[offset, offset + length).
+     */
+    public abstract long sum(int[] argb, int offset, int length);
+
+    /**
+     * Returns a short name of the kernel, for reports.
+     */
+    public abstract String getName();
+
+    private static LuminanceKernel loadBest() {
+        if (!Boolean.parseBoolean(System.getProperty("ascii_art.vector", "true")) ||
+                ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (LuminanceKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            Logger.getGlobal().warning(String.format("Failed to load the vector kernel: %s", e));
+            return SCALAR;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package image;
+
+import java.awt.*;
+import java.nio.IntBuffer;
+
+/**
+ * A package-private class of the package image.
+ * An image whose pixels stay off-heap, in a buffer mapped from a file of the PixelCache.
+ * Pixels are packed as ARGB ints, row after row, and only ever read with absolute gets,
+ * so the image may be shared between threads.
+ */
+class MappedImage implements Image {
+    private final IntBuffer argb;
+    private final int width;
+    private final int height;
+    private IntegralImage integralImage;
+
+    /**
+     * @param argb the pixels, starting at index 0. The buffer is not copied.
+     */
+    MappedImage(IntBuffer argb, int width, int height) {
+        this.argb = argb;
+        this.width = width;
+        this.height = height;
+    }
+
+    @Override
+    public int getWidth() {
+        return width;
+    }
+
+    @Override
+    public int getHeight() {
+        return height;
+    }
+
+    @Override
+    public Color getPixel(int x, int y) {
+        return new Color(getArgb(x, y), true);
+    }
+
+    @Override
+    public int getArgb(int x, int y) {
+        return argb.get(y * width + x);
+    }
+
+    @Override
+    public void getArgbRow(int x, int y, int length, int[] dst, int dstOffset) {
+        argb.get(y * width + x, dst, dstOffset, length);
+    }
+
+    @Override
+    public synchronized IntegralImage getIntegralImage() {
+        if (integralImage == null) {
+            integralImage = new IntegralImage(this);
+        }
+        return integralImage;
+    }
+
+    @Override
+    public Image[][] getRepixelatedImage(int pixelSize) {
+        return ImageView.repixelate(this, pixelSize);
+    }
+}
@@ -0,0 +1,159 @@
+package image;
+
+import metrics.Metrics;
+import metrics.Stage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.logging.Logger;
+
+/**
+ * A package-private class of the package image.
+ * An opt-in cache of decoded pixels on disk, enabled by setting the system property
+ * "ascii_art.pixelCache" to a directory. The pixels of every image opened from a file are
+ * written there raw, under a name derived from the file's path, size and modification
+ * time, and later opens of the same file map them with FileChannel.map instead of
+ * decoding again. Mapped pixels live off-heap, in the page cache, so processes opening the
+ * same image share them.
+ * <p>
+ * Cache files are written under a temporary name and renamed into place, so a process never
+ * maps a partly written file. Files which do not match the expected layout are ignored.
+ */
+final class PixelCache {
+    private static final String DIRECTORY_PROPERTY = "ascii_art.pixelCache";
+    private static final String EXTENSION = ".argb";
+    // "ARGB", written in the native byte order so files from another byte order are ignored
+    private static final int MAGIC = 0x41524742;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int KEY_BYTES = 16;
+    private static final int ROWS_PER_WRITE = 64;
+
+    private static final Path directory = getDirectory();
+
+    private PixelCache() {
+    }
+
+    static boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Opens an image from its cached pixels, or decodes it and caches its pixels for next
+     * time. Failing to cache is logged, and the decoded image is returned regardless.
+     *
+     * @param minWidth as for FileImage, which is part of what identifies the cached pixels
+     */
+    static Image load(String filename, int minWidth) throws IOException {
+        Path source = Path.of(filename).toAbsolutePath().normalize();
+        BasicFileAttributes attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        Path cached = directory.resolve(key(source, attributes, minWidth) + EXTENSION);
+
+        Image img = map(cached);
+        if (img != null) {
+            return img;
+        }
+        FileImage decoded = new FileImage(filename, minWidth);
+        try {
+            write(cached, decoded);
+        } catch (IOException e) {
+            Logger.getGlobal().warning(String.format("Failed to cache the pixels of \"%s\": %s", filename, e));
+        }
+        return decoded;
+    }
+
+    private static String key(Path source, BasicFileAttributes attributes, int minWidth) {
+        String identity = String.format("%s\0%d\0%d\0%d", source, attributes.size(),
+                attributes.lastModifiedTime().toMillis(), minWidth);
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest, 0, KEY_BYTES);
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the image in a cache file, or null if there is no valid one.
+     */
+    private static Image map(Path cached) throws IOException {
+        if (!Files.isRegularFile(cached)) {
+            return null;
+        }
+        Metrics.Span span = Metrics.start(Stage.DECODE);
+        try (FileChannel channel = FileChannel.open(cached, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.nativeOrder());
+            int magic = mapped.getInt(), version = mapped.getInt(), width = mapped.getInt(), height = mapped.getInt();
+            if (magic != MAGIC || version != VERSION || width <= 0 || height <= 0 ||
+                    size != HEADER_BYTES + (long) width * height * Integer.BYTES) {
+                return null;
+            }
+            IntBuffer argb = mapped.slice().order(ByteOrder.nativeOrder()).asIntBuffer();
+            span.end((long) width * height, 0, 0);
+            return new MappedImage(argb, width, height);
+        }
+    }
+
+    private static void write(Path cached, Image img) throws IOException {
+        int width = img.getWidth(), height = img.getHeight();
+        if (HEADER_BYTES + (long) width * height * Integer.BYTES > Integer.MAX_VALUE) {
+            // Too large to map as a single buffer
+            return;
+        }
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, "pixels", ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Math.max(HEADER_BYTES, ROWS_PER_WRITE * width * Integer.BYTES))
+                    .order(ByteOrder.nativeOrder());
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).flip();
+            writeFully(channel, buffer);
+
+            int[] rows = new int[ROWS_PER_WRITE * width];
+            for (int y = 0; y < height; y += ROWS_PER_WRITE) {
+                int numRows = Math.min(ROWS_PER_WRITE, height - y);
+                for (int i = 0; i < numRows; i++) {
+                    img.getArgbRow(0, y + i, width, rows, i * width);
+                }
+                buffer.clear();
+                buffer.asIntBuffer().put(rows, 0, numRows * width);
+                buffer.limit(numRows * width * Integer.BYTES);
+                writeFully(channel, buffer);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        Files.move(temporary, cached, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static Path getDirectory() {
+        String directory = System.getProperty(DIRECTORY_PROPERTY);
+        return directory == null || directory.isEmpty() ? null : Path.of(directory);
+    }
+}
@@ -0,0 +1,15 @@
+package image;
+
+/**
+ * Receives the pixels of an image a row at a time, as a span of packed ARGB ints.
+ */
+@FunctionalInterface
+public interface PixelRowVisitor {
+    /**
+     * @param y      the row of the span
+     * @param argb   the array holding the span, which may be reused once the call returns
+     * @param offset the index in argb of the row's leftmost pixel
+     * @param length the number of pixels in the row
+     */
+    void visitRow(int y, int[] argb, int offset, int length);
+}
@@ -0,0 +1,77 @@
+package image;
+
+import java.util.Spliterator;
+import java.util.function.IntConsumer;
+
+/**
+ * A package-private class of the package image.
+ * Iterates the pixels of an image as packed ARGB ints, fetching whole row spans through
+ * getArgbRow when traversed in bulk. Splits halve the remaining rows.
+ */
+class PixelSpliterator implements Spliterator.OfInt {
+    private final Image img;
+    private final int width;
+    // The next pixel, and the one after the last, as indices into the image's rows
+    private long index;
+    private final long end;
+    private int[] row;
+
+    PixelSpliterator(Image img) {
+        this(img, 0, (long) img.getWidth() * img.getHeight());
+    }
+
+    private PixelSpliterator(Image img, long index, long end) {
+        this.img = img;
+        this.width = img.getWidth();
+        this.index = index;
+        this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(IntConsumer action) {
+        if (index >= end) {
+            return false;
+        }
+        action.accept(img.getArgb((int) (index % width), (int) (index / width)));
+        index++;
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(IntConsumer action) {
+        if (row == null) {
+            row = new int[width];
+        }
+        while (index < end) {
+            int x = (int) (index % width), y = (int) (index / width);
+            int length = (int) Math.min(width - x, end - index);
+            img.getArgbRow(x, y, length, row, 0);
+            for (int i = 0; i < length; i++) {
+                action.accept(row[i]);
+            }
+            index += length;
+        }
+    }
+
+    @Override
+    public Spliterator.OfInt trySplit() {
+        long firstRow = (index + width - 1) / width, lastRow = end / width;
+        if (lastRow - firstRow < 2) {
+            return null;
+        }
+        long split = (firstRow + (lastRow - firstRow) / 2) * width;
+        PixelSpliterator prefix = new PixelSpliterator(img, index, split);
+        index = split;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - index;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+}
@@ -0,0 +1,28 @@
+package image;
+
+/**
+ * A package-private class of the package image.
+ * Computes luminance one pixel at a time.
+ */
+class ScalarLuminanceKernel extends LuminanceKernel {
+    @Override
+    public void luminance(int[] argb, int offset, int length, int[] dst, int dstOffset) {
+        for (int i = 0; i < length; i++) {
+            dst[dstOffset + i] = luminance(argb[offset + i]);
+        }
+    }
+
+    @Override
+    public long sum(int[] argb, int offset, int length) {
+        long sum = 0;
+        for (int i = offset; i < offset + length; i++) {
+            sum += luminance(argb[i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+}
@@ -0,0 +1,58 @@
+package image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * A package-private class of the package image.
+ * Computes luminance as many pixels at a time as the CPU's widest vectors hold. Only
+ * loaded through LuminanceKernel.get, once the jdk.incubator.vector module is known to
+ * be present.
+ */
+class VectorLuminanceKernel extends LuminanceKernel {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    // Lanes are summed as ints, so long runs are summed in blocks which cannot overflow them
+    private static final int MAX_BLOCK_LENGTH = 1 << 20;
+
+    @Override
+    public void luminance(int[] argb, int offset, int length, int[] dst, int dstOffset) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            luminance(IntVector.fromArray(SPECIES, argb, offset + i)).intoArray(dst, dstOffset + i);
+        }
+        for (; i < length; i++) {
+            dst[dstOffset + i] = luminance(argb[offset + i]);
+        }
+    }
+
+    @Override
+    public long sum(int[] argb, int offset, int length) {
+        long sum = 0;
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; ) {
+            IntVector sums = IntVector.zero(SPECIES);
+            for (int blockEnd = Math.min(bound, i + MAX_BLOCK_LENGTH); i < blockEnd; i += SPECIES.length()) {
+                sums = sums.add(luminance(IntVector.fromArray(SPECIES, argb, offset + i)));
+            }
+            sum += sums.reduceLanes(VectorOperators.ADD);
+        }
+        for (; i < length; i++) {
+            sum += luminance(argb[offset + i]);
+        }
+        return sum;
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + SPECIES.vectorBitSize();
+    }
+
+    private static IntVector luminance(IntVector argb) {
+        IntVector red = argb.lanewise(VectorOperators.LSHR, 16).and(0xFF);
+        IntVector green = argb.lanewise(VectorOperators.LSHR, 8).and(0xFF);
+        IntVector blue = argb.and(0xFF);
+        return red.mul(RED_WEIGHT).add(green.mul(GREEN_WEIGHT)).add(blue.mul(BLUE_WEIGHT))
+                .lanewise(VectorOperators.LSHR, WEIGHT_BITS);
+    }
+}
@@ -0,0 +1,180 @@
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Facade of the metrics module. Records, per stage, how many times it ran, its total wall
+ * time, the pixels and tiles it processed, the bytes it wrote and the bytes it allocated on
+ * the recording thread. Every stage is also emitted as a Flight Recorder event.
+ * <p>
+ * Recording is off unless the system property "ascii_art.metrics" is true or setEnabled
+ * is called. While off, start returns a shared span which does nothing.
+ */
+public final class Metrics {
+    private static final Span NO_SPAN = new Span(null);
+    private static final StageStats[] stats = new StageStats[Stage.values().length];
+
+    private static volatile boolean enabled = Boolean.getBoolean("ascii_art.metrics");
+
+    static {
+        for (int i = 0; i < stats.length; i++) {
+            stats[i] = new StageStats();
+        }
+    }
+
+    private Metrics() {
+    }
+
+    private static class StageStats {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder pixels = new LongAdder();
+        private final LongAdder tiles = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder allocated = new LongAdder();
+    }
+
+    /**
+     * A single run of a stage, from start until end is called.
+     */
+    public static final class Span {
+        private final Stage stage;
+        private final StageEvent event;
+        private final long startNanos;
+        private final long startAllocated;
+
+        private Span(Stage stage) {
+            this.stage = stage;
+            if (stage == null) {
+                event = null;
+                startNanos = 0;
+                startAllocated = 0;
+            } else {
+                event = new StageEvent();
+                event.begin();
+                startAllocated = allocatedBytes();
+                startNanos = System.nanoTime();
+            }
+        }
+
+        /**
+         * Ends the span, recording what the stage processed.
+         *
+         * @param pixels the number of pixels read or drawn
+         * @param tiles  the number of tiles or characters produced
+         * @param bytes  the number of bytes written
+         */
+        public void end(long pixels, long tiles, long bytes) {
+            if (stage == null) {
+                return;
+            }
+            long nanos = System.nanoTime() - startNanos;
+            long allocated = allocatedBytes() - startAllocated;
+            StageStats stageStats = stats[stage.ordinal()];
+            stageStats.count.increment();
+            stageStats.nanos.add(nanos);
+            stageStats.pixels.add(pixels);
+            stageStats.tiles.add(tiles);
+            stageStats.bytes.add(bytes);
+            stageStats.allocated.add(allocated);
+
+            event.end();
+            if (event.shouldCommit()) {
+                event.stage = stage.name();
+                event.pixels = pixels;
+                event.tiles = tiles;
+                event.bytes = bytes;
+                event.allocated = allocated;
+                event.commit();
+            }
+        }
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    /**
+     * Starts timing a run of a stage. The returned span must be ended by the same thread.
+     */
+    public static Span start(Stage stage) {
+        return enabled ? new Span(stage) : NO_SPAN;
+    }
+
+    /**
+     * Forgets everything recorded so far.
+     */
+    public static void reset() {
+        for (StageStats stageStats : stats) {
+            stageStats.count.reset();
+            stageStats.nanos.reset();
+            stageStats.pixels.reset();
+            stageStats.tiles.reset();
+            stageStats.bytes.reset();
+            stageStats.allocated.reset();
+        }
+    }
+
+    /**
+     * Returns a table of everything recorded so far, one stage per line.
+     */
+    public static String summary() {
+        StringBuilder summary = new StringBuilder(String.format("%-10s %6s %10s %12s %10s %12s %12s%n",
+                "stage", "runs", "ms", "pixels", "tiles", "written", "allocated"));
+        for (Stage stage : Stage.values()) {
+            StageStats stageStats = stats[stage.ordinal()];
+            summary.append(String.format("%-10s %6d %10.1f %12d %10d %12d %12d%n",
+                    stage.name().toLowerCase(), stageStats.count.sum(), stageStats.nanos.sum() / 1e6,
+                    stageStats.pixels.sum(), stageStats.tiles.sum(), stageStats.bytes.sum(),
+                    stageStats.allocated.sum()));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Returns everything recorded so far as a single line of JSON, keyed by stage.
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{");
+        for (Stage stage : Stage.values()) {
+            StageStats stageStats = stats[stage.ordinal()];
+            if (stage.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append(String.format("\"%s\":{\"runs\":%d,\"nanos\":%d,\"pixels\":%d,\"tiles\":%d," +
+                            "\"bytes\":%d,\"allocated\":%d}",
+                    stage.name().toLowerCase(), stageStats.count.sum(), stageStats.nanos.sum(),
+                    stageStats.pixels.sum(), stageStats.tiles.sum(), stageStats.bytes.sum(),
+                    stageStats.allocated.sum()));
+        }
+        return json.append('}').toString();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean bean = AllocationCounter.bean;
+        return bean == null ? 0 : bean.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Holds the bean counting allocations, so it is only looked up once metrics are enabled.
+     */
+    private static class AllocationCounter {
+        private static final com.sun.management.ThreadMXBean bean = getBean();
+
+        private static com.sun.management.ThreadMXBean getBean() {
+            ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+            if (bean instanceof com.sun.management.ThreadMXBean allocationBean
+                    && allocationBean.isThreadAllocatedMemorySupported()) {
+                allocationBean.setThreadAllocatedMemoryEnabled(true);
+                return allocationBean;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package metrics;
+
+/**
+ * The stages of turning an image file into ASCII art.
+ */
+public enum Stage {
+    /**
+     * Decoding an image file into memory.
+     */
+    DECODE,
+    /**
+     * Copying decoded pixels into an image's packed storage.
+     */
+    FIT,
+    /**
+     * Building the luminance summed-area table of an image.
+     */
+    INTEGRAL,
+    /**
+     * Dividing an image into sub-images.
+     */
+    REPIXELATE,
+    /**
+     * Drawing a character of a font.
+     */
+    RASTERIZE,
+    /**
+     * Measuring the brightness of the tiles of an image.
+     */
+    MEASURE,
+    /**
+     * Mapping tile brightness to characters.
+     */
+    MATCH,
+    /**
+     * Writing rendered characters out.
+     */
+    OUTPUT
+}
@@ -0,0 +1,35 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A package-private class of the package metrics.
+ * The Flight Recorder event of a single stage, shown in a recording's timeline.
+ */
+@Name("ascii_art.Stage")
+@Label("ASCII Art Stage")
+@Category("ASCII Art")
+@Description("A stage of rendering an image as ASCII art")
+class StageEvent extends Event {
+    @Label("Stage")
+    String stage;
+
+    @Label("Pixels")
+    long pixels;
+
+    @Label("Tiles")
+    long tiles;
+
+    @Label("Bytes Written")
+    @DataAmount
+    long bytes;
+
+    @Label("Bytes Allocated")
+    @DataAmount
+    long allocated;
+}
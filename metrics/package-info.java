@@ -0,0 +1,5 @@
+/**
+ * Instrumentation of the stages of a render: how long each took, how much it processed
+ * and allocated. Recording is off unless enabled, and costs next to nothing while off.
+ */
+package metrics;
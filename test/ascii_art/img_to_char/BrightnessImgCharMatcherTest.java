@@ -0,0 +1,85 @@
+package ascii_art.img_to_char;
+
+import image.Image;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.awt.image.BufferedImage;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks that grids large enough to be measured on the fork/join pool come out the same
+ * whether the rows are measured by a single thread or split among several.
+ */
+class BrightnessImgCharMatcherTest {
+    private static final String FONT_NAME = "Courier New";
+    // Twice the smallest grid measured on the pool, in both directions
+    private static final int COLS = 256;
+    private static final int ROWS = 200;
+
+    private static ForkJoinPool singleThread;
+    private static ForkJoinPool multiThread;
+    private static Image img;
+
+    @BeforeAll
+    static void setUp() {
+        singleThread = new ForkJoinPool(1);
+        multiThread = new ForkJoinPool(4);
+        // Tiles of uneven sizes, so row bands do not split the image evenly
+        BufferedImage buffered = new BufferedImage(1001, 777, BufferedImage.TYPE_INT_ARGB);
+        Random random = new Random(4);
+        for (int y = 0; y < buffered.getHeight(); y++) {
+            for (int x = 0; x < buffered.getWidth(); x++) {
+                buffered.setRGB(x, y, random.nextInt());
+            }
+        }
+        img = Image.fromBufferedImage(buffered);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        singleThread.shutdown();
+        multiThread.shutdown();
+    }
+
+    @Test
+    void plainGridIsTheSameOnAnyNumberOfThreads() {
+        BrightnessGrid expected = new BrightnessImgCharMatcher(img, FONT_NAME, singleThread).getBrightnessGrid(ROWS, COLS);
+        BrightnessGrid actual = new BrightnessImgCharMatcher(img, FONT_NAME, multiThread).getBrightnessGrid(ROWS, COLS);
+        assertSameGrid(expected, actual);
+    }
+
+    @Test
+    void coloredGridIsTheSameOnAnyNumberOfThreads() {
+        BrightnessGrid expected = new BrightnessImgCharMatcher(img, FONT_NAME, singleThread).getColoredGrid(COLS);
+        BrightnessGrid actual = new BrightnessImgCharMatcher(img, FONT_NAME, multiThread).getColoredGrid(COLS);
+        assertSameGrid(expected, actual);
+        for (int row = 0; row < expected.getRows(); row++) {
+            for (int col = 0; col < expected.getCols(); col++) {
+                assertEquals(expected.getColor(row, col), actual.getColor(row, col), "color at " + row + "," + col);
+            }
+        }
+    }
+
+    @Test
+    void coloredGridHasTheLevelsOfThePlainGrid() {
+        BrightnessImgCharMatcher matcher = new BrightnessImgCharMatcher(img, FONT_NAME, multiThread);
+        assertSameGrid(matcher.getBrightnessGrid(COLS), matcher.getColoredGrid(COLS));
+    }
+
+    private static void assertSameGrid(BrightnessGrid expected, BrightnessGrid actual) {
+        assertEquals(expected.getRows(), actual.getRows());
+        assertEquals(expected.getCols(), actual.getCols());
+        assertEquals(expected.getMinLevel(), actual.getMinLevel());
+        assertEquals(expected.getMaxLevel(), actual.getMaxLevel());
+        for (int row = 0; row < expected.getRows(); row++) {
+            for (int col = 0; col < expected.getCols(); col++) {
+                assertEquals(expected.getLevel(row, col), actual.getLevel(row, col), "level at " + row + "," + col);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package ascii_output;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that grids written by the binary and compressed page outputs read back the same,
+ * with and without run-length encoding.
+ */
+class AsciiReaderTest {
+    private static final String FONT_NAME = "Courier New";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void longRuns() throws IOException {
+        // Runs longer than a row, so they continue across rows
+        char[][] chars = filled(300, 400, ' ');
+        for (int row = 100; row < 200; row++) {
+            Arrays.fill(chars[row], '#');
+        }
+        chars[299][399] = '@';
+        assertBinaryRoundTrips(chars);
+        assertGzipHtmlRoundTrips(chars);
+    }
+
+    @Test
+    void runsOfLengthOne() throws IOException {
+        char[][] chars = new char[7][13];
+        for (int row = 0; row < chars.length; row++) {
+            for (int col = 0; col < chars[row].length; col++) {
+                chars[row][col] = (row + col) % 2 == 0 ? '.' : '@';
+            }
+        }
+        assertBinaryRoundTrips(chars);
+        assertGzipHtmlRoundTrips(chars);
+    }
+
+    @Test
+    void singleCharPalette() throws IOException {
+        // Indices of no bits at all
+        assertBinaryRoundTrips(filled(1, 1, '@'));
+        assertBinaryRoundTrips(filled(50, 80, '@'));
+        assertGzipHtmlRoundTrips(filled(50, 80, '@'));
+    }
+
+    @Test
+    void randomChars() throws IOException {
+        char[] palette = " .:-=+*#%@".toCharArray();
+        Random random = new Random(22);
+        char[][] chars = new char[61][97];
+        for (char[] row : chars) {
+            for (int col = 0; col < row.length; col++) {
+                row[col] = palette[random.nextInt(palette.length)];
+            }
+        }
+        assertBinaryRoundTrips(chars);
+        assertGzipHtmlRoundTrips(chars);
+    }
+
+    @Test
+    void nonAsciiChars() throws IOException {
+        char[][] chars = {
+                "é█▓▒░ ".toCharArray(),
+                "░░░▒▓█".toCharArray(),
+                "Ā￿é█ x".toCharArray()
+        };
+        assertBinaryRoundTrips(chars);
+        assertGzipHtmlRoundTrips(chars);
+    }
+
+    @Test
+    void htmlEscapedChars() throws IOException {
+        char[][] chars = {
+                "<<>>&&".toCharArray(),
+                "&lt;; ".toCharArray(),
+                "a<b>&c".toCharArray()
+        };
+        assertBinaryRoundTrips(chars);
+        assertGzipHtmlRoundTrips(chars);
+    }
+
+    private void assertBinaryRoundTrips(char[][] chars) throws IOException {
+        for (boolean runLengthEncoded : new boolean[]{false, true}) {
+            String filename = dir.resolve("out" + runLengthEncoded + ".bin").toString();
+            new BinaryAsciiOutput(filename, runLengthEncoded).write(chars);
+            assertArrayEquals(chars, AsciiReader.readBinary(filename), "run-length encoded: " + runLengthEncoded);
+        }
+    }
+
+    private void assertGzipHtmlRoundTrips(char[][] chars) throws IOException {
+        String filename = dir.resolve("out.html.gz").toString();
+        new GzipHtmlAsciiOutput(filename, FONT_NAME).write(chars);
+        assertArrayEquals(chars, AsciiReader.readGzipHtml(filename));
+    }
+
+    private static char[][] filled(int rows, int cols, char c) {
+        char[][] chars = new char[rows][cols];
+        for (char[] row : chars) {
+            Arrays.fill(row, c);
+        }
+        return chars;
+    }
+}
@@ -0,0 +1,91 @@
+package image;
+
+import jdk.incubator.vector.IntVector;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the vector kernel against the scalar loop, pixel by pixel, on random pixels and
+ * on the extremes, for lengths around multiples of the vector length and at offsets.
+ */
+class LuminanceKernelTest {
+    private static final int LANES = IntVector.SPECIES_PREFERRED.length();
+    private static final int BLACK = 0xFF000000;
+    private static final int WHITE = 0xFFFFFFFF;
+
+    private final LuminanceKernel vector = new VectorLuminanceKernel();
+
+    @Test
+    void randomPixels() {
+        Random random = new Random(17);
+        for (int length : lengths()) {
+            assertMatchesScalar(random.ints(length + 3).toArray(), 3, length);
+        }
+    }
+
+    @Test
+    void allZero() {
+        for (int pixel : new int[]{0, BLACK}) {
+            for (int length : lengths()) {
+                assertMatchesScalar(filled(length, pixel), 0, length);
+            }
+        }
+    }
+
+    @Test
+    void all255() {
+        for (int pixel : new int[]{WHITE, WHITE & 0xFFFFFF}) {
+            for (int length : lengths()) {
+                assertMatchesScalar(filled(length, pixel), 0, length);
+            }
+        }
+    }
+
+    @Test
+    void sumOfLongWhiteRun() {
+        // Longer than a block of lane sums, which would overflow an int if summed whole
+        int length = (1 << 23) + LANES + 1;
+        int[] argb = filled(length, WHITE);
+        assertEquals(255L * length, vector.sum(argb, 0, length));
+        assertEquals(LuminanceKernel.scalar().sum(argb, 0, length), vector.sum(argb, 0, length));
+    }
+
+    private void assertMatchesScalar(int[] argb, int offset, int length) {
+        int[] expected = new int[length];
+        long expectedSum = 0;
+        for (int i = 0; i < length; i++) {
+            expected[i] = LuminanceKernel.luminance(argb[offset + i]);
+            expectedSum += expected[i];
+        }
+
+        int[] actual = new int[length + 2];
+        vector.luminance(argb, offset, length, actual, 2);
+        assertArrayEquals(expected, Arrays.copyOfRange(actual, 2, length + 2), "length " + length);
+        assertEquals(expectedSum, vector.sum(argb, offset, length), "length " + length);
+        assertEquals(expectedSum, LuminanceKernel.scalar().sum(argb, offset, length), "length " + length);
+    }
+
+    /**
+     * Returns lengths from empty to a few vectors, including every remainder of the vector
+     * length.
+     */
+    private static int[] lengths() {
+        int[] lengths = new int[4 * LANES + 2];
+        for (int i = 0; i < lengths.length; i++) {
+            lengths[i] = i;
+        }
+        lengths[lengths.length - 1] = 1000 * LANES + LANES - 1;
+        return lengths;
+    }
+
+    private static int[] filled(int length, int pixel) {
+        int[] argb = new int[length];
+        Arrays.fill(argb, pixel);
+        return argb;
+    }
+}